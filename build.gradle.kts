@@ -87,6 +87,8 @@ val annotationsVersion: String by rootProject
 val commonsPoolVersion: String by rootProject
 val gsonVersion: String by rootProject
 val jomlVersion: String by rootProject
+val jmhVersion: String by rootProject
+val junitVersion: String by rootProject
 val logbackVersion: String by rootProject
 val reactorVersion: String by rootProject
 
@@ -142,6 +144,35 @@ subprojects {
         implementation("io.projectreactor:reactor-core")
         implementation("io.projectreactor.addons:reactor-pool")
     }
+
+    val testImplementation by configurations
+    val testRuntimeOnly by configurations
+    dependencies {
+        testImplementation(platform("org.junit:junit-bom:$junitVersion"))
+        testImplementation("org.junit.jupiter:junit-jupiter")
+        testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    }
+
+    // JMH benchmarks in src/jmh/java, run with the jmh task; pass JMH options with -PjmhArgs="..."
+    val sourceSets = the<SourceSetContainer>()
+    val main by sourceSets
+    val jmh by sourceSets.creating {
+        compileClasspath += main.output
+        runtimeClasspath += main.output
+    }
+    configurations[jmh.implementationConfigurationName].extendsFrom(implementation)
+    configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations["runtimeOnly"])
+    dependencies {
+        add(jmh.implementationConfigurationName, "org.openjdk.jmh:jmh-core:$jmhVersion")
+        add(jmh.annotationProcessorConfigurationName, "org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+    }
+    tasks.register<JavaExec>("jmh") {
+        group = "benchmark"
+        description = "Runs the JMH benchmarks."
+        classpath = jmh.runtimeClasspath
+        mainClass = "org.openjdk.jmh.Main"
+        (findProperty("jmhArgs") as String?)?.also { args(it.split(' ').filter(String::isNotBlank)) }
+    }
 }
 
 gameModules.forEach {
@@ -157,6 +188,12 @@ gameModules.forEach {
         }
 
         tasks.withType<Test> {
+            useJUnitPlatform()
+            if (jdkEnablePreview.toBoolean()) jvmArgs("--enable-preview")
+        }
+
+        tasks.named<JavaExec>("jmh") {
+            // the forked benchmark JVMs inherit the arguments of this one
             if (jdkEnablePreview.toBoolean()) jvmArgs("--enable-preview")
         }
 
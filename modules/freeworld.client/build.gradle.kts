@@ -38,9 +38,11 @@ val overrunglArch = System.getProperty("os.arch")!!.let { arch ->
     }
 }
 
-configurations.runtimeClasspath.get().attributes {
-    attribute(OperatingSystemFamily.OPERATING_SYSTEM_ATTRIBUTE, objects.named(overrunglOs))
-    attribute(MachineArchitecture.ARCHITECTURE_ATTRIBUTE, objects.named(overrunglArch))
+listOf("runtimeClasspath", "testRuntimeClasspath", "jmhRuntimeClasspath").forEach {
+    configurations[it].attributes {
+        attribute(OperatingSystemFamily.OPERATING_SYSTEM_ATTRIBUTE, objects.named(overrunglOs))
+        attribute(MachineArchitecture.ARCHITECTURE_ATTRIBUTE, objects.named(overrunglArch))
+    }
 }
 
 dependencies {
@@ -0,0 +1,87 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.builder;
+
+import freeworld.client.render.model.VertexLayouts;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the index paths of {@link DefaultVertexBuilder} when building chunk quads.
+ * <p>
+ * Each operation is one quad: four vertices and six indices. Run with {@code -prof gc} to see the allocation per quad.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(VertexBuilderBenchmark.QUADS)
+public class VertexBuilderBenchmark {
+    static final int QUADS = 4096;
+    private final MemorySegment quadIndices = Arena.global().allocateFrom(ValueLayout.JAVA_INT, 0, 1, 2, 2, 3, 0);
+    private DefaultVertexBuilder builder;
+
+    @Setup
+    public void setUp() {
+        builder = new DefaultVertexBuilder(VertexLayouts.CHUNK, QUADS * 4, QUADS * 6);
+    }
+
+    private static void vertices(DefaultVertexBuilder builder, int i) {
+        final int x = i & 15;
+        final int z = (i >> 4) & 15;
+        builder.position(x, 0, z).texCoord(0, 0).uvRegion(0f, 0f, 0.0625f, 0.0625f).normalIndex(3).emit();
+        builder.position(x, 0, z + 1).texCoord(0, 1).uvRegion(0f, 0f, 0.0625f, 0.0625f).normalIndex(3).emit();
+        builder.position(x + 1, 0, z + 1).texCoord(1, 1).uvRegion(0f, 0f, 0.0625f, 0.0625f).normalIndex(3).emit();
+        builder.position(x + 1, 0, z).texCoord(1, 0).uvRegion(0f, 0f, 0.0625f, 0.0625f).normalIndex(3).emit();
+    }
+
+    @Benchmark
+    public int varargsIndices() {
+        final DefaultVertexBuilder b = builder;
+        b.reset();
+        for (int i = 0; i < QUADS; i++) {
+            b.indices(0, 1, 2, 2, 3, 0);
+            vertices(b, i);
+        }
+        return b.indexCount();
+    }
+
+    @Benchmark
+    public int quad() {
+        final DefaultVertexBuilder b = builder;
+        b.reset();
+        for (int i = 0; i < QUADS; i++) {
+            b.quad();
+            vertices(b, i);
+        }
+        return b.indexCount();
+    }
+
+    @Benchmark
+    public int segmentIndices() {
+        final DefaultVertexBuilder b = builder;
+        b.reset();
+        for (int i = 0; i < QUADS; i++) {
+            b.indices(quadIndices);
+            vertices(b, i);
+        }
+        return b.indexCount();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.builder.DefaultVertexBuilder;
+import freeworld.client.render.model.VertexLayouts;
+import freeworld.client.render.model.block.BlockModelManager;
+import freeworld.client.render.texture.TextureRegion;
+import freeworld.core.Identifier;
+import freeworld.core.registry.BuiltinRegistries;
+import freeworld.util.Direction;
+import freeworld.world.block.BlockType;
+import freeworld.world.block.BlockTypes;
+import freeworld.world.chunk.ChunkRegion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single-pass face culling of {@link VisibleFaces} with the six per-direction sweeps it replaced,
+ * on their own and as part of meshing a section.
+ * <p>
+ * The sweeps are kept here as the baseline: they test the neighbour of every block, air included, once per direction.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkMesherBenchmark {
+    private static final int SIZE = ChunkRegion.SIZE;
+    private static final int TEXTURE_SIZE = 16;
+    /**
+     * The blocks of the section: a terrain surface, a checkerboard of stone and air, or random blocks with 25% air.
+     */
+    @Param({"terrain", "checkerboard", "random"})
+    public String blocks;
+    private ChunkRegion region;
+    private BlockRenderer blockRenderer;
+    private DefaultVertexBuilder vertexBuilder;
+
+    @Setup
+    public void setUp() {
+        BlockTypes.bootstrap();
+        if (!BuiltinRegistries.BLOCK_TYPE.frozen()) {
+            BuiltinRegistries.BLOCK_TYPE.freeze();
+        }
+        final Map<Identifier, TextureRegion> regions = new HashMap<>();
+        final BlockModelManager manager = new BlockModelManager();
+        manager.bake(BuiltinRegistries.BLOCK_TYPE,
+            id -> regions.computeIfAbsent(id, _ -> new TextureRegion(regions.size() * TEXTURE_SIZE, 0, TEXTURE_SIZE, TEXTURE_SIZE)),
+            TEXTURE_SIZE * 16,
+            TEXTURE_SIZE * 16);
+        blockRenderer = new BlockRenderer(manager);
+        vertexBuilder = new DefaultVertexBuilder(VertexLayouts.CHUNK, 65536, 98304);
+
+        final BlockType[] types = {BlockTypes.STONE, BlockTypes.DIRT, BlockTypes.GRASS_BLOCK};
+        final Random random = new Random(42L);
+        final BlockType[] padded = new BlockType[ChunkRegion.PADDED_SIZE * ChunkRegion.PADDED_SIZE * ChunkRegion.PADDED_SIZE];
+        for (int y = -1; y <= SIZE; y++) {
+            for (int z = -1; z <= SIZE; z++) {
+                for (int x = -1; x <= SIZE; x++) {
+                    padded[ChunkRegion.index(x, y, z)] = switch (blocks) {
+                        case "terrain" -> {
+                            final int height = 6 + Math.floorMod(x * 3 + z * 5, 7);
+                            if (y > height) yield BlockTypes.AIR;
+                            yield y == height ? BlockTypes.GRASS_BLOCK : (y > height - 3 ? BlockTypes.DIRT : BlockTypes.STONE);
+                        }
+                        case "checkerboard" -> ((x + y + z) & 1) == 0 ? BlockTypes.STONE : BlockTypes.AIR;
+                        case "random" -> random.nextInt(4) == 0 ? BlockTypes.AIR : types[random.nextInt(types.length)];
+                        default -> throw new IllegalArgumentException(STR."Unknown blocks: \{blocks}");
+                    };
+                }
+            }
+        }
+        region = ChunkRegion.of(0, 0, 0, padded);
+    }
+
+    @Benchmark
+    public void sixSweepsCull(Blackhole blackhole) {
+        for (Direction direction : Direction.LIST) {
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE; y++) {
+                    for (int z = 0; z < SIZE; z++) {
+                        final int nx = x + direction.axisX();
+                        final int ny = y + direction.axisY();
+                        final int nz = z + direction.axisZ();
+                        if (region.isBlockLoaded(nx, ny, nz) &&
+                            region.getBlockType(nx, ny, nz).air()) {
+                            blackhole.consume(BuiltinRegistries.BLOCK_TYPE.getRawId(region.getBlockType(x, y, z)));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void singlePassCull(Blackhole blackhole) {
+        final VisibleFaces faces = VisibleFaces.of(region);
+        final int count = faces.count();
+        for (Direction direction : Direction.LIST) {
+            for (int i = 0; i < count; i++) {
+                if (faces.isVisible(i, direction)) {
+                    blackhole.consume(faces.rawId(i));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int sixSweepsMesh() {
+        vertexBuilder.reset();
+        for (Direction direction : Direction.LIST) {
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE; y++) {
+                    for (int z = 0; z < SIZE; z++) {
+                        final int nx = x + direction.axisX();
+                        final int ny = y + direction.axisY();
+                        final int nz = z + direction.axisZ();
+                        if (region.isBlockLoaded(nx, ny, nz) &&
+                            region.getBlockType(nx, ny, nz).air()) {
+                            blockRenderer.renderChunkFace(
+                                vertexBuilder,
+                                BuiltinRegistries.BLOCK_TYPE.getRawId(region.getBlockType(x, y, z)),
+                                x, y, z,
+                                1, 1, 1,
+                                direction
+                            );
+                        }
+                    }
+                }
+            }
+        }
+        return vertexBuilder.vertexCount();
+    }
+
+    @Benchmark
+    public int naiveMesh() {
+        vertexBuilder.reset();
+        ChunkMesher.NAIVE.mesh(vertexBuilder, blockRenderer, region);
+        return vertexBuilder.vertexCount();
+    }
+
+    @Benchmark
+    public int greedyMesh() {
+        vertexBuilder.reset();
+        ChunkMesher.GREEDY.mesh(vertexBuilder, blockRenderer, region);
+        return vertexBuilder.vertexCount();
+    }
+}
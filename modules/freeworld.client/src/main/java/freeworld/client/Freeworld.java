@@ -26,6 +26,7 @@ import freeworld.world.block.BlockTypes;
 import freeworld.world.entity.Entity;
 import freeworld.world.entity.EntityTypes;
 import freeworld.world.entity.component.OnGroundComponent;
+import freeworld.world.gen.NoiseChunkGenerator;
 import org.joml.Vector2d;
 import org.slf4j.Logger;
 import overrun.marshal.Unmarshal;
@@ -133,8 +134,9 @@ public final class Freeworld implements AutoCloseable {
         EntityTypes.bootstrap();
         BuiltinRegistries.ENTITY_TYPE.freeze();
 
-        world = new World("New world");
-        player = world.createEntity(EntityTypes.PLAYER, 0.0, 0.0, 0.0);
+        final String worldName = "New world";
+        world = new World(worldName, new NoiseChunkGenerator(worldName.hashCode()));
+        player = world.createEntity(EntityTypes.PLAYER, 0.0, world.generator().heightAt(0, 0), 0.0);
 
         initGL();
         run();
@@ -283,7 +285,13 @@ public final class Freeworld implements AutoCloseable {
 
     @Override
     public void close() {
-        gameRenderer.close(gl);
+        // saved first, so that no edit is lost if releasing the other resources fails
+        if (world != null) {
+            world.close();
+        }
+        if (gameRenderer != null) {
+            gameRenderer.close(gl);
+        }
         if (!Unmarshal.isNullPointer(window)) {
             GLFWCallbacks.free(window);
             glfw.destroyWindow(window);
@@ -17,15 +17,18 @@ import freeworld.client.render.gl.GLResource;
 import freeworld.client.render.gl.GLStateMgr;
 import freeworld.client.render.model.VertexLayout;
 import freeworld.client.render.model.VertexLayouts;
+import freeworld.client.render.model.block.BlockModelManager;
 import freeworld.client.render.texture.TextureAtlas;
 import freeworld.client.render.texture.TextureManager;
 import freeworld.client.render.texture.TextureRegion;
 import freeworld.client.render.world.BlockRenderer;
+import freeworld.client.render.world.ChunkVertexArena;
 import freeworld.client.render.world.HitResult;
 import freeworld.client.render.world.WorldRenderer;
 import freeworld.client.world.chunk.ClientChunk;
 import freeworld.core.Identifier;
 import freeworld.core.math.AABBox;
+import freeworld.core.registry.BuiltinRegistries;
 import freeworld.util.Direction;
 import freeworld.util.Logging;
 import freeworld.world.block.BlockType;
@@ -33,7 +36,11 @@ import freeworld.world.entity.Entity;
 import org.slf4j.Logger;
 import overrungl.opengl.GL10C;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The game renderer.
@@ -46,16 +53,31 @@ public final class GameRenderer implements GLResource {
     private final Freeworld client;
     private GLProgram positionColorProgram;
     private GLProgram positionColorTexProgram;
+    private GLProgram chunkProgram;
     public static final Identifier TEX_DIRT = Identifier.ofBuiltin("texture/block/dirt.png");
     public static final Identifier TEX_GRASS_BLOCK = Identifier.ofBuiltin("texture/block/grass_block.png");
     public static final Identifier TEX_STONE = Identifier.ofBuiltin("texture/block/stone.png");
     private static final Identifier TEX_CROSSING = Identifier.ofBuiltin("texture/gui/crossing.png");
     private static final Identifier TEX_HOT_BAR = Identifier.ofBuiltin("texture/gui/hotbar.png");
     private static final Identifier TEX_HOT_BAR_SELECTED = Identifier.ofBuiltin("texture/gui/hotbar_selected.png");
+    /**
+     * Line indices of the 12 edges of a box whose 8 vertices are ordered by x, then y, then z.
+     */
+    private static final MemorySegment BOX_OUTLINE_INDICES = Arena.global().allocateFrom(ValueLayout.JAVA_INT,
+        // -x
+        0, 1, 0, 2, 1, 3, 2, 3,
+        // +x
+        4, 5, 4, 6, 5, 7, 6, 7,
+        // -z
+        0, 4, 2, 6,
+        // +z
+        1, 5, 3, 7
+    );
     private final float guiScale = 2;
     private TextureManager textureManager;
     private TextureAtlas blockAtlas;
     private TextureAtlas guiAtlas;
+    private BlockModelManager blockModelManager;
     private BlockRenderer blockRenderer;
     private WorldRenderer worldRenderer;
     private Tessellator tessellator;
@@ -76,6 +98,8 @@ public final class GameRenderer implements GLResource {
 
         blockAtlas = TextureAtlas.load(gl, List.of(TEX_DIRT, TEX_GRASS_BLOCK, TEX_STONE), 4);
         textureManager.addTexture(TextureManager.BLOCK_ATLAS, blockAtlas);
+        blockModelManager = new BlockModelManager();
+        blockModelManager.bake(BuiltinRegistries.BLOCK_TYPE, blockAtlas);
         logger.info("Created {}x{}x{} {}", blockAtlas.width(), blockAtlas.height(), blockAtlas.mipmapLevel(), TextureManager.BLOCK_ATLAS);
 
         guiAtlas = TextureAtlas.load(gl, List.of(TEX_CROSSING, TEX_HOT_BAR, TEX_HOT_BAR_SELECTED), 0);
@@ -91,11 +115,17 @@ public final class GameRenderer implements GLResource {
     private void initGLPrograms(GLStateMgr gl) {
         positionColorProgram = initBootstrapProgram(gl, "init/position_color", VertexLayouts.POSITION_COLOR);
         positionColorTexProgram = initBootstrapProgram(gl, "init/position_color_tex", VertexLayouts.POSITION_COLOR_TEX);
+        chunkProgram = initBootstrapProgram(gl, "init/chunk", VertexLayouts.CHUNK,
+            Map.of("PAGE_VERTICES", String.valueOf(ChunkVertexArena.PAGE_VERTICES)));
     }
 
     private GLProgram initBootstrapProgram(GLStateMgr gl, String path, VertexLayout layout) {
+        return initBootstrapProgram(gl, path, layout, Map.of());
+    }
+
+    private GLProgram initBootstrapProgram(GLStateMgr gl, String path, VertexLayout layout, Map<String, String> defines) {
         final Identifier identifier = Identifier.ofBuiltin(path);
-        final GLProgram program = GLProgram.load(gl, identifier, layout);
+        final GLProgram program = GLProgram.load(gl, identifier, layout, defines);
         if (program == null) {
             throw new IllegalStateException(STR."Failed to initialize bootstrap GLProgram \{identifier}");
         }
@@ -126,7 +156,7 @@ public final class GameRenderer implements GLResource {
         RenderSystem.setViewMatrix(camera.viewMatrix());
         RenderSystem.setModelMatrix(RenderSystem.modelMatrix().identity());
 
-        RenderSystem.bindProgram(positionColorTexProgram);
+        RenderSystem.bindProgram(chunkProgram);
         RenderSystem.updateMatrices();
 
         final List<ClientChunk> chunks = worldRenderer.renderingChunks(player);
@@ -148,14 +178,7 @@ public final class GameRenderer implements GLResource {
             RenderSystem.updateMatrices();
             tessellator.begin(GLDrawMode.LINES);
             tessellator.color(0, 0, 0);
-            // -x
-            tessellator.indices(0, 1, 0, 2, 1, 3, 2, 3);
-            // +x
-            tessellator.indices(4, 5, 4, 6, 5, 7, 6, 7);
-            // -z
-            tessellator.indices(0, 4, 2, 6);
-            // +z
-            tessellator.indices(1, 5, 3, 7);
+            tessellator.indices(BOX_OUTLINE_INDICES);
             tessellator.position(minX - offset, minY - offset, minZ - offset).emit();
             tessellator.position(minX - offset, minY - offset, maxZ + offset).emit();
             tessellator.position(minX - offset, maxY + offset, minZ - offset).emit();
@@ -224,7 +247,7 @@ public final class GameRenderer implements GLResource {
         final float v0 = region.v0(height);
         final float v1 = region.v1(height);
         tessellator.color(1.0f, 1.0f, 1.0f);
-        tessellator.indices(0, 1, 2, 2, 3, 0);
+        tessellator.quad();
         tessellator.texCoord(u0, v0).position(x - lWidth, y + tHeight, 0).emit();
         tessellator.texCoord(u0, v1).position(x - lWidth, y - bHeight, 0).emit();
         tessellator.texCoord(u1, v1).position(x + rWidth, y - bHeight, 0).emit();
@@ -270,6 +293,7 @@ public final class GameRenderer implements GLResource {
 
         if (positionColorProgram != null) positionColorProgram.close(gl);
         if (positionColorTexProgram != null) positionColorTexProgram.close(gl);
+        if (chunkProgram != null) chunkProgram.close(gl);
 
         if (tessellator != null) tessellator.close(gl);
     }
@@ -286,10 +310,18 @@ public final class GameRenderer implements GLResource {
         return positionColorTexProgram;
     }
 
+    public GLProgram chunkProgram() {
+        return chunkProgram;
+    }
+
     public TextureManager textureManager() {
         return textureManager;
     }
 
+    public BlockModelManager blockModelManager() {
+        return blockModelManager;
+    }
+
     public BlockRenderer blockRenderer() {
         return blockRenderer;
     }
@@ -75,6 +75,18 @@ public final class Tessellator implements GLResource, VertexBuilder {
         return this;
     }
 
+    @Override
+    public Tessellator uvRegion(float u, float v, float width, float height) {
+        vertexBuilder.uvRegion(u, v, width, height);
+        return this;
+    }
+
+    @Override
+    public Tessellator normalIndex(int index) {
+        vertexBuilder.normalIndex(index);
+        return this;
+    }
+
     @Override
     public void emit() {
         vertexBuilder.emit();
@@ -92,6 +104,30 @@ public final class Tessellator implements GLResource, VertexBuilder {
         return this;
     }
 
+    @Override
+    public Tessellator indices6(int i0, int i1, int i2, int i3, int i4, int i5) {
+        vertexBuilder.indices6(i0, i1, i2, i3, i4, i5);
+        return this;
+    }
+
+    @Override
+    public Tessellator indicesWithOffset(int offset, MemorySegment indices) {
+        vertexBuilder.indicesWithOffset(offset, indices);
+        return this;
+    }
+
+    @Override
+    public Tessellator indices(MemorySegment indices) {
+        vertexBuilder.indices(indices);
+        return this;
+    }
+
+    @Override
+    public Tessellator quad() {
+        vertexBuilder.quad();
+        return this;
+    }
+
     public void flush(GLStateMgr gl) {
         if (!drawing) throw new IllegalStateException("Do not call Tessellator.flush when not drawing");
 
@@ -20,17 +20,31 @@ import java.lang.foreign.MemoryLayout.PathElement;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.StructLayout;
 import java.lang.foreign.ValueLayout;
-import java.lang.invoke.VarHandle;
 import java.util.List;
 import java.util.Objects;
 
+import static freeworld.client.util.Conversions.floatToUnorm16;
+
 /**
+ * A vertex builder writing into native memory.
+ * <p>
+ * The byte offset of each attribute in a vertex is computed once from the layout;
+ * {@link #emit()} writes the attributes of a vertex at {@code vertexCount * stride} plus these offsets.
+ * An offset of {@code -1} marks an attribute that is not in the layout.
+ *
  * @author squid233
  * @since 0.1.0
  */
 public final class DefaultVertexBuilder implements VertexBuilder {
     private static final Logger logger = Logging.caller();
     private final VertexLayout vertexLayout;
+    private final long stride;
+    private final long offsetPosition;
+    private final long offsetColor;
+    private final long offsetTexCoord;
+    private final long offsetChunkPosition;
+    private final long offsetChunkUV;
+    private final long offsetChunkUVRegion;
     private Arena vertexArena;
     private Arena indexArena;
     private MemorySegment vertexData;
@@ -39,9 +53,6 @@ public final class DefaultVertexBuilder implements VertexBuilder {
     private boolean shouldReallocateIndexData = true;
     private int maxVertexCount;
     private int maxIndexCount;
-    private final VarHandle vhPosition;
-    private final VarHandle vhColor;
-    private final VarHandle vhTexCoord;
     private int prevVertexCount = 0;
     private int prevIndexCount = 0;
     private int vertexCount = 0;
@@ -49,6 +60,8 @@ public final class DefaultVertexBuilder implements VertexBuilder {
     private float x = 0f, y = 0f, z = 0f;
     private int r = 0xff, g = 0xff, b = 0xff, a = 0xff;
     private float u = 0f, v = 0f;
+    private float regionU = 0f, regionV = 0f, regionWidth = 1f, regionHeight = 1f;
+    private int normalIndex = 0;
 
     public DefaultVertexBuilder(VertexLayout layout, int vertexCount, int indexCount) {
         Objects.requireNonNull(layout);
@@ -59,6 +72,7 @@ public final class DefaultVertexBuilder implements VertexBuilder {
         final List<VertexFormat> formats = layout.formats();
 
         this.vertexLayout = layout;
+        this.stride = structLayout.byteSize();
         this.vertexArena = Arena.ofAuto();
         this.indexArena = Arena.ofAuto();
         this.vertexData = vertexArena.allocate(structLayout, vertexCount);
@@ -66,21 +80,22 @@ public final class DefaultVertexBuilder implements VertexBuilder {
         this.maxVertexCount = vertexCount;
         this.maxIndexCount = indexCount;
 
-        if (formats.contains(VertexFormat.POSITION)) {
-            this.vhPosition = structLayout.arrayElementVarHandle(PathElement.groupElement(VertexFormat.POSITION.name()), PathElement.sequenceElement());
-        } else {
+        if (!formats.contains(VertexFormat.POSITION) && !formats.contains(VertexFormat.CHUNK_POSITION)) {
             throw new IllegalArgumentException(STR."Invalid vertex layout: \{layout}");
         }
-        if (formats.contains(VertexFormat.COLOR)) {
-            this.vhColor = structLayout.arrayElementVarHandle(PathElement.groupElement(VertexFormat.COLOR.name()), PathElement.sequenceElement());
-        } else {
-            this.vhColor = null;
-        }
-        if (formats.contains(VertexFormat.UV)) {
-            this.vhTexCoord = structLayout.arrayElementVarHandle(PathElement.groupElement(VertexFormat.UV.name()), PathElement.sequenceElement());
-        } else {
-            this.vhTexCoord = null;
+        this.offsetPosition = offsetOf(structLayout, formats, VertexFormat.POSITION);
+        this.offsetColor = offsetOf(structLayout, formats, VertexFormat.COLOR);
+        this.offsetTexCoord = offsetOf(structLayout, formats, VertexFormat.UV);
+        this.offsetChunkPosition = offsetOf(structLayout, formats, VertexFormat.CHUNK_POSITION);
+        this.offsetChunkUV = offsetOf(structLayout, formats, VertexFormat.CHUNK_UV);
+        this.offsetChunkUVRegion = offsetOf(structLayout, formats, VertexFormat.CHUNK_UV_REGION);
+    }
+
+    private static long offsetOf(StructLayout structLayout, List<VertexFormat> formats, VertexFormat format) {
+        if (formats.contains(format)) {
+            return structLayout.byteOffset(PathElement.groupElement(format.name()));
         }
+        return -1L;
     }
 
     @Override
@@ -91,23 +106,37 @@ public final class DefaultVertexBuilder implements VertexBuilder {
         indexCount = 0;
     }
 
-    @Override
-    public DefaultVertexBuilder indicesWithOffset(int offset, int... indices) {
-        final int length = indices.length;
-        if (indexCount + length > maxIndexCount) {
-            logger.debug("Exceeds max index count: {} + {} > {}; expanding", indexCount, length, maxIndexCount);
-            maxIndexCount = maxIndexCount * 3 / 2;
-            indexArena = Arena.ofAuto();
-            indexData = indexArena.allocate(ValueLayout.JAVA_INT, maxIndexCount);
+    /**
+     * Ensures space for the given count of more indices, keeping the written ones.
+     */
+    private void ensureIndexCapacity(int count) {
+        if (indexCount + count > maxIndexCount) {
+            logger.debug("Exceeds max index count: {} + {} > {}; expanding", indexCount, count, maxIndexCount);
+            maxIndexCount = Math.max(maxIndexCount * 3 / 2, indexCount + count);
+            final Arena arena = Arena.ofAuto();
+            final MemorySegment segment = arena.allocate(ValueLayout.JAVA_INT, maxIndexCount);
+            MemorySegment.copy(indexData, 0L, segment, 0L, ValueLayout.JAVA_INT.scale(0L, indexCount));
+            indexArena = arena;
+            indexData = segment;
             shouldReallocateIndexData = true;
         }
-        for (int i = 0; i < indices.length; i++) {
-            indexData.setAtIndex(ValueLayout.JAVA_INT, indexCount + i, indices[i] + offset);
-        }
-        indexCount += length;
+    }
+
+    private void addIndexCount(int count) {
+        indexCount += count;
         if (indexCount > prevIndexCount) {
             shouldReallocateIndexData = true;
         }
+    }
+
+    @Override
+    public DefaultVertexBuilder indicesWithOffset(int offset, int... indices) {
+        final int length = indices.length;
+        ensureIndexCapacity(length);
+        for (int i = 0; i < length; i++) {
+            indexData.setAtIndex(ValueLayout.JAVA_INT, indexCount + i, indices[i] + offset);
+        }
+        addIndexCount(length);
         return this;
     }
 
@@ -116,6 +145,46 @@ public final class DefaultVertexBuilder implements VertexBuilder {
         return indicesWithOffset(vertexCount, indices);
     }
 
+    @Override
+    public DefaultVertexBuilder indices6(int i0, int i1, int i2, int i3, int i4, int i5) {
+        ensureIndexCapacity(6);
+        final int offset = vertexCount;
+        final long base = indexCount;
+        indexData.setAtIndex(ValueLayout.JAVA_INT, base, i0 + offset);
+        indexData.setAtIndex(ValueLayout.JAVA_INT, base + 1, i1 + offset);
+        indexData.setAtIndex(ValueLayout.JAVA_INT, base + 2, i2 + offset);
+        indexData.setAtIndex(ValueLayout.JAVA_INT, base + 3, i3 + offset);
+        indexData.setAtIndex(ValueLayout.JAVA_INT, base + 4, i4 + offset);
+        indexData.setAtIndex(ValueLayout.JAVA_INT, base + 5, i5 + offset);
+        addIndexCount(6);
+        return this;
+    }
+
+    @Override
+    public DefaultVertexBuilder indicesWithOffset(int offset, MemorySegment indices) {
+        final int length = Math.toIntExact(indices.byteSize() / ValueLayout.JAVA_INT.byteSize());
+        ensureIndexCapacity(length);
+        if (offset == 0) {
+            MemorySegment.copy(indices, 0L, indexData, ValueLayout.JAVA_INT.scale(0L, indexCount), ValueLayout.JAVA_INT.scale(0L, length));
+        } else {
+            for (int i = 0; i < length; i++) {
+                indexData.setAtIndex(ValueLayout.JAVA_INT, indexCount + i, indices.getAtIndex(ValueLayout.JAVA_INT, i) + offset);
+            }
+        }
+        addIndexCount(length);
+        return this;
+    }
+
+    @Override
+    public DefaultVertexBuilder indices(MemorySegment indices) {
+        return indicesWithOffset(vertexCount, indices);
+    }
+
+    @Override
+    public DefaultVertexBuilder quad() {
+        return indices6(0, 1, 2, 2, 3, 0);
+    }
+
     @Override
     public DefaultVertexBuilder position(float x, float y, float z) {
         this.x = x;
@@ -158,28 +227,71 @@ public final class DefaultVertexBuilder implements VertexBuilder {
         return this;
     }
 
+    @Override
+    public DefaultVertexBuilder uvRegion(float u, float v, float width, float height) {
+        this.regionU = u;
+        this.regionV = v;
+        this.regionWidth = width;
+        this.regionHeight = height;
+        return this;
+    }
+
+    @Override
+    public DefaultVertexBuilder normalIndex(int index) {
+        this.normalIndex = index;
+        return this;
+    }
+
     @Override
     public void emit() {
         if (vertexCount + 1 > maxVertexCount) {
             logger.debug("Exceeds max vertex count: {}; expanding", maxVertexCount);
             maxVertexCount = maxVertexCount * 3 / 2;
-            vertexArena = Arena.ofAuto();
-            vertexData = vertexArena.allocate(vertexLayout.layout(), maxVertexCount);
+            final Arena arena = Arena.ofAuto();
+            final MemorySegment segment = arena.allocate(vertexLayout.layout(), maxVertexCount);
+            MemorySegment.copy(vertexData, 0L, segment, 0L, stride * vertexCount);
+            vertexArena = arena;
+            vertexData = segment;
             shouldReallocateVertexData = true;
         }
-        final long count = vertexCount;
-        vhPosition.set(vertexData, 0L, count, 0L, x);
-        vhPosition.set(vertexData, 0L, count, 1L, y);
-        vhPosition.set(vertexData, 0L, count, 2L, z);
-        if (vhColor != null) {
-            vhColor.set(vertexData, 0L, count, 0L, (byte) r);
-            vhColor.set(vertexData, 0L, count, 1L, (byte) g);
-            vhColor.set(vertexData, 0L, count, 2L, (byte) b);
-            vhColor.set(vertexData, 0L, count, 3L, (byte) a);
+        final MemorySegment data = vertexData;
+        final long base = stride * vertexCount;
+        if (offsetPosition != -1L) {
+            final long offset = base + offsetPosition;
+            data.set(ValueLayout.JAVA_FLOAT, offset, x);
+            data.set(ValueLayout.JAVA_FLOAT, offset + 4L, y);
+            data.set(ValueLayout.JAVA_FLOAT, offset + 8L, z);
+        }
+        if (offsetColor != -1L) {
+            final long offset = base + offsetColor;
+            data.set(ValueLayout.JAVA_BYTE, offset, (byte) r);
+            data.set(ValueLayout.JAVA_BYTE, offset + 1L, (byte) g);
+            data.set(ValueLayout.JAVA_BYTE, offset + 2L, (byte) b);
+            data.set(ValueLayout.JAVA_BYTE, offset + 3L, (byte) a);
+        }
+        if (offsetTexCoord != -1L) {
+            final long offset = base + offsetTexCoord;
+            data.set(ValueLayout.JAVA_FLOAT, offset, u);
+            data.set(ValueLayout.JAVA_FLOAT, offset + 4L, v);
+        }
+        if (offsetChunkPosition != -1L) {
+            final long offset = base + offsetChunkPosition;
+            data.set(ValueLayout.JAVA_SHORT, offset, (short) x);
+            data.set(ValueLayout.JAVA_SHORT, offset + 2L, (short) y);
+            data.set(ValueLayout.JAVA_SHORT, offset + 4L, (short) z);
+            data.set(ValueLayout.JAVA_SHORT, offset + 6L, (short) normalIndex);
+        }
+        if (offsetChunkUV != -1L) {
+            final long offset = base + offsetChunkUV;
+            data.set(ValueLayout.JAVA_SHORT, offset, (short) u);
+            data.set(ValueLayout.JAVA_SHORT, offset + 2L, (short) v);
         }
-        if (vhTexCoord != null) {
-            vhTexCoord.set(vertexData, 0L, count, 0L, u);
-            vhTexCoord.set(vertexData, 0L, count, 1L, v);
+        if (offsetChunkUVRegion != -1L) {
+            final long offset = base + offsetChunkUVRegion;
+            data.set(ValueLayout.JAVA_SHORT, offset, floatToUnorm16(regionU));
+            data.set(ValueLayout.JAVA_SHORT, offset + 2L, floatToUnorm16(regionV));
+            data.set(ValueLayout.JAVA_SHORT, offset + 4L, floatToUnorm16(regionWidth));
+            data.set(ValueLayout.JAVA_SHORT, offset + 6L, floatToUnorm16(regionHeight));
         }
         vertexCount++;
         if (vertexCount > prevVertexCount) {
@@ -209,7 +321,7 @@ public final class DefaultVertexBuilder implements VertexBuilder {
 
     @Override
     public MemorySegment vertexDataSlice() {
-        return vertexData().asSlice(0L, vertexLayout.layout().scale(0L, vertexCount()));
+        return vertexData().asSlice(0L, stride * vertexCount());
     }
 
     @Override
@@ -28,6 +28,37 @@ public interface VertexBuilder {
 
     VertexBuilder indices(int... indices);
 
+    /**
+     * Adds six indices relative to the current vertex count without allocating an array.
+     *
+     * @return this
+     */
+    VertexBuilder indices6(int i0, int i1, int i2, int i3, int i4, int i5);
+
+    /**
+     * Adds the {@code int} indices of the given segment, each plus the given offset.
+     *
+     * @param offset  the offset
+     * @param indices the indices
+     * @return this
+     */
+    VertexBuilder indicesWithOffset(int offset, MemorySegment indices);
+
+    /**
+     * Adds the {@code int} indices of the given segment relative to the current vertex count.
+     *
+     * @param indices the indices
+     * @return this
+     */
+    VertexBuilder indices(MemorySegment indices);
+
+    /**
+     * Adds the indices {@code 0, 1, 2, 2, 3, 0} of a quad made of the next four vertices.
+     *
+     * @return this
+     */
+    VertexBuilder quad();
+
     VertexBuilder position(float x, float y, float z);
 
     VertexBuilder color(int red, int green, int blue, int alpha);
@@ -46,6 +77,16 @@ public interface VertexBuilder {
 
     VertexBuilder texCoord(float u, float v);
 
+    VertexBuilder uvRegion(float u, float v, float width, float height);
+
+    /**
+     * Sets the index of the face direction, which selects the normal and the shade.
+     *
+     * @param index the index
+     * @return this
+     */
+    VertexBuilder normalIndex(int index);
+
     void emit();
 
     int vertexCount();
@@ -20,6 +20,8 @@ import java.lang.foreign.ValueLayout;
  */
 public enum GLDataType {
     UNSIGNED_BYTE(GL.UNSIGNED_BYTE, ValueLayout.JAVA_BYTE),
+    SHORT(GL.SHORT, ValueLayout.JAVA_SHORT),
+    UNSIGNED_SHORT(GL.UNSIGNED_SHORT, ValueLayout.JAVA_SHORT),
     FLOAT(GL.FLOAT, ValueLayout.JAVA_FLOAT);
 
     private final int value;
@@ -61,10 +61,25 @@ public final class GLProgram implements GLResource {
 
     @Nullable
     public static GLProgram load(GLStateMgr gl, @NotNull Identifier identifier, @NotNull VertexLayout vertexLayout) {
+        return load(gl, identifier, vertexLayout, Map.of());
+    }
+
+    /**
+     * Loads a program whose shaders are compiled with the given macros defined.
+     *
+     * @param gl           the OpenGL state
+     * @param identifier   the identifier of the program
+     * @param vertexLayout the vertex layout
+     * @param defines      the values of the macros by their names, defined after the {@code #version} directive
+     * @return the program, or {@code null} if it failed to load
+     */
+    @Nullable
+    public static GLProgram load(GLStateMgr gl, @NotNull Identifier identifier, @NotNull VertexLayout vertexLayout, @NotNull Map<String, String> defines) {
         Objects.requireNonNull(identifier);
         Objects.requireNonNull(vertexLayout);
+        Objects.requireNonNull(defines);
 
-        final GLProgram program = loadFromJson(gl, identifier, vertexLayout);
+        final GLProgram program = loadFromJson(gl, identifier, vertexLayout, defines);
         if (program != null) {
             logger.debug("Created {}", program);
             return program;
@@ -72,7 +87,7 @@ public final class GLProgram implements GLResource {
         return null;
     }
 
-    private static GLProgram loadFromJson(GLStateMgr gl, Identifier identifier, VertexLayout vertexLayout) {
+    private static GLProgram loadFromJson(GLStateMgr gl, Identifier identifier, VertexLayout vertexLayout, Map<String, String> defines) {
         final String path = identifier.toResourcePath(Identifier.ROOT_ASSETS,
             Identifier.RES_SHADER,
             Identifier.EXT_JSON);
@@ -157,7 +172,7 @@ public final class GLProgram implements GLResource {
         // OpenGL stuff
 
         final String vshPath = vshId.toResourcePath(Identifier.ROOT_ASSETS, Identifier.RES_SHADER, null);
-        final String vshSrc = BuiltinFiles.readText(BuiltinFiles.load(vshPath), vshPath);
+        final String vshSrc = injectDefines(BuiltinFiles.readText(BuiltinFiles.load(vshPath), vshPath), defines);
         if (vshSrc == null) {
             return null;
         }
@@ -167,7 +182,7 @@ public final class GLProgram implements GLResource {
         }
 
         final String fshPath = fshId.toResourcePath(Identifier.ROOT_ASSETS, Identifier.RES_SHADER, null);
-        final String fshSrc = BuiltinFiles.readText(BuiltinFiles.load(fshPath), fshPath);
+        final String fshSrc = injectDefines(BuiltinFiles.readText(BuiltinFiles.load(fshPath), fshPath), defines);
         if (fshSrc == null) {
             gl.deleteShader(vsh);
             return null;
@@ -263,6 +278,25 @@ public final class GLProgram implements GLResource {
         logger.error("Failed to load GLProgram {}: Malformed JSON from file {}: {}", identifier, file, msg);
     }
 
+    private static String injectDefines(String src, Map<String, String> defines) {
+        if (src == null || defines.isEmpty()) {
+            return src;
+        }
+        final StringBuilder sb = new StringBuilder(src.length() + defines.size() * 32);
+        // the #version directive must stay first
+        int start = 0;
+        if (src.startsWith("#version")) {
+            final int lineEnd = src.indexOf('\n');
+            start = lineEnd != -1 ? lineEnd + 1 : src.length();
+            sb.append(src, 0, start);
+            if (lineEnd == -1) {
+                sb.append('\n');
+            }
+        }
+        defines.forEach((name, value) -> sb.append("#define ").append(name).append(' ').append(value).append('\n'));
+        return sb.append(src, start, src.length()).toString();
+    }
+
     private static int compileShader(GLStateMgr gl, int type, String name, String src) {
         final int shader = gl.createShader(type);
         gl.shaderSource(shader, src);
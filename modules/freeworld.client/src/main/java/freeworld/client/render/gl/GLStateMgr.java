@@ -20,10 +20,10 @@ import overrungl.opengl.*;
  * @since 0.1.0
  */
 public abstract class GLStateMgr implements
-    GL10C, GL11C, GL14C, GL15C,
+    GL10C, GL11C, GL13C, GL14C, GL15C,
     GL20C,
-    GL30C,
-    GL41C,
+    GL30C, GL31C, GL32C,
+    GL40C, GL41C, GL43C, GL44C,
     DirectAccess {
     private int arrayBufferBinding = 0;
     private boolean blend = false;
@@ -22,6 +22,18 @@ public interface VertexFormat {
     VertexFormat POSITION = new DefaultVertexFormat("Position", 3, GLDataType.FLOAT, false);
     VertexFormat COLOR = new DefaultVertexFormat("Color", 4, GLDataType.UNSIGNED_BYTE, true);
     VertexFormat UV = new DefaultVertexFormat("UV", 2, GLDataType.FLOAT, false);
+    /**
+     * The position relative to the chunk origin in xyz, and the index of the face direction in w.
+     */
+    VertexFormat CHUNK_POSITION = new DefaultVertexFormat("ChunkPosition", 4, GLDataType.SHORT, false);
+    /**
+     * The texture coordinates counting whole blocks, which repeat in {@link #CHUNK_UV_REGION}.
+     */
+    VertexFormat CHUNK_UV = new DefaultVertexFormat("ChunkUV", 2, GLDataType.UNSIGNED_SHORT, false);
+    /**
+     * The atlas region (u, v, width, height).
+     */
+    VertexFormat CHUNK_UV_REGION = new DefaultVertexFormat("ChunkUVRegion", 4, GLDataType.UNSIGNED_SHORT, true);
 
     String name();
 
@@ -26,6 +26,14 @@ public final class VertexLayouts {
         VertexFormat.COLOR,
         VertexFormat.UV
     );
+    /**
+     * Chunk meshes; 20 bytes per vertex.
+     */
+    public static final VertexLayout CHUNK = new VertexLayout(
+        VertexFormat.CHUNK_POSITION,
+        VertexFormat.CHUNK_UV,
+        VertexFormat.CHUNK_UV_REGION
+    );
 
     private VertexLayouts() {
     }
@@ -0,0 +1,36 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.model.block;
+
+import freeworld.util.Direction;
+
+/**
+ * A baked cube model with at most one quad per face.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class BakedBlockModel {
+    private final BakedQuad[] faces;
+
+    BakedBlockModel(BakedQuad[] faces) {
+        this.faces = faces;
+    }
+
+    /**
+     * {@return the quad of the given face, or {@code null} if the face is not rendered}
+     *
+     * @param direction the face
+     */
+    public BakedQuad face(Direction direction) {
+        return faces[direction.id()];
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.model.block;
+
+import freeworld.util.Direction;
+
+/**
+ * An immutable quad of a baked model.
+ * <p>
+ * The four vertices are stored as {@link #FLOATS_PER_VERTEX} floats each:
+ * the position in the unit cube, and the texture coordinates in the unit square.
+ * A quad of a box of any size is obtained by scaling the position by the size of the box
+ * and the texture coordinates by the size of the face along {@link #uAxis()} and {@link #vAxis()}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class BakedQuad {
+    public static final int VERTEX_COUNT = 4;
+    public static final int FLOATS_PER_VERTEX = 5;
+    private final Direction cullFace;
+    private final float[] vertices;
+    private final int uAxis;
+    private final int vAxis;
+    private final float u0;
+    private final float v0;
+    private final float u1;
+    private final float v1;
+
+    BakedQuad(Direction cullFace, float[] vertices, int uAxis, int vAxis, float u0, float v0, float u1, float v1) {
+        this.cullFace = cullFace;
+        this.vertices = vertices;
+        this.uAxis = uAxis;
+        this.vAxis = vAxis;
+        this.u0 = u0;
+        this.v0 = v0;
+        this.u1 = u1;
+        this.v1 = v1;
+    }
+
+    /**
+     * {@return the face that hides this quad when its neighbour is opaque}
+     */
+    public Direction cullFace() {
+        return cullFace;
+    }
+
+    public float x(int vertex) {
+        return vertices[vertex * FLOATS_PER_VERTEX];
+    }
+
+    public float y(int vertex) {
+        return vertices[vertex * FLOATS_PER_VERTEX + 1];
+    }
+
+    public float z(int vertex) {
+        return vertices[vertex * FLOATS_PER_VERTEX + 2];
+    }
+
+    public float u(int vertex) {
+        return vertices[vertex * FLOATS_PER_VERTEX + 3];
+    }
+
+    public float v(int vertex) {
+        return vertices[vertex * FLOATS_PER_VERTEX + 4];
+    }
+
+    /**
+     * {@return the axis (0 for x, 1 for y, 2 for z) along which the texture repeats horizontally}
+     */
+    public int uAxis() {
+        return uAxis;
+    }
+
+    /**
+     * {@return the axis (0 for x, 1 for y, 2 for z) along which the texture repeats vertically}
+     */
+    public int vAxis() {
+        return vAxis;
+    }
+
+    public float u0() {
+        return u0;
+    }
+
+    public float v0() {
+        return v0;
+    }
+
+    public float u1() {
+        return u1;
+    }
+
+    public float v1() {
+        return v1;
+    }
+}
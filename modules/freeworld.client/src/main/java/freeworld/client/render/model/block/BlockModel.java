@@ -0,0 +1,55 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.model.block;
+
+import freeworld.core.Identifier;
+import freeworld.util.Direction;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * An unbaked cube model with a texture for each face.
+ * <p>
+ * Texture identifiers are short IDs such as {@code freeworld:dirt},
+ * resolved to {@code texture/block/<path>.png} when baking.
+ *
+ * @param textures the texture of each face; faces without texture are not rendered
+ * @author squid233
+ * @since 0.1.0
+ */
+public record BlockModel(Map<Direction, Identifier> textures) {
+    public BlockModel {
+        textures = Map.copyOf(textures);
+    }
+
+    public static BlockModel cubeAll(Identifier texture) {
+        final Map<Direction, Identifier> map = new EnumMap<>(Direction.class);
+        for (Direction direction : Direction.LIST) {
+            map.put(direction, texture);
+        }
+        return new BlockModel(map);
+    }
+
+    public static BlockModel cubeBottomTop(Identifier side, Identifier bottom, Identifier top) {
+        final Map<Direction, Identifier> map = new EnumMap<>(Direction.class);
+        for (Direction direction : Direction.LIST) {
+            map.put(direction, side);
+        }
+        map.put(Direction.DOWN, bottom);
+        map.put(Direction.UP, top);
+        return new BlockModel(map);
+    }
+
+    public Identifier texture(Direction direction) {
+        return textures.get(direction);
+    }
+}
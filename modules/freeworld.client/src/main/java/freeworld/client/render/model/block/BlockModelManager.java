@@ -0,0 +1,146 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.model.block;
+
+import freeworld.client.render.texture.TextureAtlas;
+import freeworld.client.render.texture.TextureRegion;
+import freeworld.core.Identifier;
+import freeworld.core.registry.Registry;
+import freeworld.util.Direction;
+import freeworld.world.block.BlockType;
+import freeworld.world.block.BlockTypes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Holds the model of each block type and bakes them against the block atlas.
+ * <p>
+ * Block types without a registered model use {@link BlockModel#cubeAll(Identifier) cubeAll} of their
+ * {@linkplain BlockType#textureId() texture}. Baked models are indexed by the raw ID of the block type.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class BlockModelManager {
+    /**
+     * The unit-cube vertices of each face, indexed by direction:
+     * x, y, z, u, v for each of the four vertices.
+     */
+    private static final float[][] CUBE_FACES = {
+        // -x
+        {0, 1, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 1, 1, 1, 0, 1, 1, 1, 0},
+        // +x
+        {1, 1, 1, 0, 0, 1, 0, 1, 0, 1, 1, 0, 0, 1, 1, 1, 1, 0, 1, 0},
+        // -y
+        {0, 0, 1, 0, 0, 0, 0, 0, 0, 1, 1, 0, 0, 1, 1, 1, 0, 1, 1, 0},
+        // +y
+        {0, 1, 0, 0, 0, 0, 1, 1, 0, 1, 1, 1, 1, 1, 1, 1, 1, 0, 1, 0},
+        // -z
+        {1, 1, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1, 1, 0, 1, 0, 1, 0},
+        // +z
+        {0, 1, 1, 0, 0, 0, 0, 1, 0, 1, 1, 0, 1, 1, 1, 1, 1, 1, 1, 0}
+    };
+    private static final int[] U_AXES = {2, 2, 0, 0, 0, 0};
+    private static final int[] V_AXES = {1, 1, 2, 2, 1, 1};
+    private final Map<BlockType, BlockModel> models = new HashMap<>();
+    private BakedBlockModel[] bakedModels = new BakedBlockModel[0];
+
+    public BlockModelManager() {
+        register(BlockTypes.GRASS_BLOCK, BlockModel.cubeBottomTop(
+            Identifier.ofBuiltin("grass_block"),
+            Identifier.ofBuiltin("dirt"),
+            Identifier.ofBuiltin("grass_block")
+        ));
+    }
+
+    public void register(BlockType blockType, BlockModel model) {
+        models.put(blockType, model);
+    }
+
+    /**
+     * {@return the model of the given block type, or {@code null} for air}
+     *
+     * @param blockType the block type
+     */
+    public BlockModel getModel(BlockType blockType) {
+        if (blockType.air()) {
+            return null;
+        }
+        final BlockModel model = models.get(blockType);
+        return model != null ? model : BlockModel.cubeAll(blockType.textureId());
+    }
+
+    /**
+     * Bakes the models of all block types in the given registry.
+     *
+     * @param registry the block type registry
+     * @param atlas    the block atlas
+     */
+    public void bake(Registry<BlockType> registry, TextureAtlas atlas) {
+        bake(registry, atlas::getRegion, atlas.width(), atlas.height());
+    }
+
+    /**
+     * Bakes the models of all block types in the given registry against the given regions of an atlas.
+     *
+     * @param registry    the block type registry
+     * @param regions     the function returning the region of a texture by its resource ID, or {@code null} if absent
+     * @param atlasWidth  the width of the atlas
+     * @param atlasHeight the height of the atlas
+     */
+    public void bake(Registry<BlockType> registry, Function<Identifier, TextureRegion> regions, int atlasWidth, int atlasHeight) {
+        final BakedBlockModel[] baked = new BakedBlockModel[registry.maxRawId() + 1];
+        for (var entry : registry) {
+            final BlockType blockType = entry.getValue();
+            final BlockModel model = getModel(blockType);
+            if (model != null) {
+                baked[registry.getRawId(blockType)] = bakeModel(model, regions, atlasWidth, atlasHeight);
+            }
+        }
+        bakedModels = baked;
+    }
+
+    private static BakedBlockModel bakeModel(BlockModel model, Function<Identifier, TextureRegion> regions, int atlasWidth, int atlasHeight) {
+        final BakedQuad[] faces = new BakedQuad[CUBE_FACES.length];
+        for (Direction direction : Direction.LIST) {
+            final Identifier texture = model.texture(direction);
+            if (texture == null) {
+                continue;
+            }
+            final TextureRegion region = regions.apply(texture.toResourceId("texture/block", Identifier.EXT_PNG));
+            if (region == null) {
+                continue;
+            }
+            final int id = direction.id();
+            faces[id] = new BakedQuad(direction,
+                CUBE_FACES[id].clone(),
+                U_AXES[id],
+                V_AXES[id],
+                region.u0(atlasWidth),
+                region.v0(atlasHeight),
+                region.u1(atlasWidth),
+                region.v1(atlasHeight));
+        }
+        return new BakedBlockModel(faces);
+    }
+
+    /**
+     * {@return the baked model of the given raw ID, or {@code null} if there is none}
+     *
+     * @param rawId the raw ID of the block type
+     */
+    public BakedBlockModel getBakedModel(int rawId) {
+        final BakedBlockModel[] models = bakedModels;
+        return rawId >= 0 && rawId < models.length ? models[rawId] : null;
+    }
+}
@@ -12,22 +12,28 @@ package freeworld.client.render.world;
 
 import freeworld.client.render.GameRenderer;
 import freeworld.client.render.builder.VertexBuilder;
-import freeworld.client.render.texture.TextureAtlas;
-import freeworld.client.render.texture.TextureManager;
-import freeworld.client.render.texture.TextureRegion;
-import freeworld.core.Identifier;
+import freeworld.client.render.model.block.BakedBlockModel;
+import freeworld.client.render.model.block.BakedQuad;
+import freeworld.client.render.model.block.BlockModelManager;
+import freeworld.core.registry.BuiltinRegistries;
 import freeworld.util.Direction;
 import freeworld.world.block.BlockType;
 
 /**
+ * Renders blocks from their baked models.
+ *
  * @author squid233
  * @since 0.1.0
  */
 public final class BlockRenderer {
-    private final GameRenderer gameRenderer;
+    private final BlockModelManager blockModelManager;
+
+    public BlockRenderer(BlockModelManager blockModelManager) {
+        this.blockModelManager = blockModelManager;
+    }
 
     public BlockRenderer(GameRenderer gameRenderer) {
-        this.gameRenderer = gameRenderer;
+        this(gameRenderer.blockModelManager());
     }
 
     public void renderBlock(VertexBuilder builder, BlockType blockType, int x, int y, int z) {
@@ -37,75 +43,68 @@ public final class BlockRenderer {
     }
 
     public void renderBlockFace(VertexBuilder builder, BlockType blockType, int x, int y, int z, Direction direction) {
-        if (blockType.air()) {
+        final BakedQuad quad = getQuad(BuiltinRegistries.BLOCK_TYPE.getRawId(blockType), direction);
+        if (quad == null) {
             return;
         }
 
-        final TextureAtlas texture = (TextureAtlas) gameRenderer.textureManager().getTexture(TextureManager.BLOCK_ATLAS);
-        final TextureRegion region = texture.getRegion(blockType.textureId().toResourceId("texture/block", Identifier.EXT_PNG));
-        if (region == null) {
+        final float u0 = quad.u0();
+        final float v0 = quad.v0();
+        final float du = quad.u1() - u0;
+        final float dv = quad.v1() - v0;
+        builder.quad();
+        for (int i = 0; i < BakedQuad.VERTEX_COUNT; i++) {
+            builder.position(x + quad.x(i), y + quad.y(i), z + quad.z(i))
+                .color(1f, 1f, 1f)
+                .texCoord(u0 + quad.u(i) * du, v0 + quad.v(i) * dv)
+                .emit();
+        }
+    }
+
+    /**
+     * Renders a face of the box spanning {@code sizeX * sizeY * sizeZ} blocks from the given position.
+     * <p>
+     * The position is relative to the chunk origin.
+     * The texture coordinates count whole blocks and the atlas region is written with
+     * {@link VertexBuilder#uvRegion(float, float, float, float) uvRegion},
+     * so that a merged face repeats the texture of the block once per block.
+     * No index is emitted; the quads are drawn with the {@link QuadIndexBuffer}.
+     *
+     * @param builder   the vertex builder with a layout like {@link freeworld.client.render.model.VertexLayouts#CHUNK CHUNK}
+     * @param rawId     the raw ID of the block type
+     * @param x         the minimum relative x
+     * @param y         the minimum relative y
+     * @param z         the minimum relative z
+     * @param sizeX     the size of the box on the x-axis
+     * @param sizeY     the size of the box on the y-axis
+     * @param sizeZ     the size of the box on the z-axis
+     * @param direction the face
+     */
+    public void renderChunkFace(VertexBuilder builder, int rawId, int x, int y, int z, int sizeX, int sizeY, int sizeZ, Direction direction) {
+        final BakedQuad quad = getQuad(rawId, direction);
+        if (quad == null) {
             return;
         }
 
-        final float x0 = x;
-        final float y0 = y;
-        final float z0 = z;
-        final float x1 = x0 + 1f;
-        final float y1 = y0 + 1f;
-        final float z1 = z0 + 1f;
-        final float u0 = region.u0(texture.width());
-        final float u1 = region.u1(texture.width());
-        final float v0 = region.v0(texture.height());
-        final float v1 = region.v1(texture.height());
-        switch (direction) {
-            case WEST -> {
-                // -x
-                builder.indices(0, 1, 2, 2, 3, 0);
-                builder.position(x0, y1, z0).color(1f, 1f, 1f).texCoord(u0, v0).emit();
-                builder.position(x0, y0, z0).color(1f, 1f, 1f).texCoord(u0, v1).emit();
-                builder.position(x0, y0, z1).color(1f, 1f, 1f).texCoord(u1, v1).emit();
-                builder.position(x0, y1, z1).color(1f, 1f, 1f).texCoord(u1, v0).emit();
-            }
-            case EAST -> {
-                // +x
-                builder.indices(0, 1, 2, 2, 3, 0);
-                builder.position(x1, y1, z1).color(1f, 1f, 1f).texCoord(u0, v0).emit();
-                builder.position(x1, y0, z1).color(1f, 1f, 1f).texCoord(u0, v1).emit();
-                builder.position(x1, y0, z0).color(1f, 1f, 1f).texCoord(u1, v1).emit();
-                builder.position(x1, y1, z0).color(1f, 1f, 1f).texCoord(u1, v0).emit();
-            }
-            case DOWN -> {
-                // -y
-                builder.indices(0, 1, 2, 2, 3, 0);
-                builder.position(x0, y0, z1).color(1f, 1f, 1f).texCoord(u0, v0).emit();
-                builder.position(x0, y0, z0).color(1f, 1f, 1f).texCoord(u0, v1).emit();
-                builder.position(x1, y0, z0).color(1f, 1f, 1f).texCoord(u1, v1).emit();
-                builder.position(x1, y0, z1).color(1f, 1f, 1f).texCoord(u1, v0).emit();
-            }
-            case UP -> {
-                // +y
-                builder.indices(0, 1, 2, 2, 3, 0);
-                builder.position(x0, y1, z0).color(1f, 1f, 1f).texCoord(u0, v0).emit();
-                builder.position(x0, y1, z1).color(1f, 1f, 1f).texCoord(u0, v1).emit();
-                builder.position(x1, y1, z1).color(1f, 1f, 1f).texCoord(u1, v1).emit();
-                builder.position(x1, y1, z0).color(1f, 1f, 1f).texCoord(u1, v0).emit();
-            }
-            case NORTH -> {
-                // -z
-                builder.indices(0, 1, 2, 2, 3, 0);
-                builder.position(x1, y1, z0).color(1f, 1f, 1f).texCoord(u0, v0).emit();
-                builder.position(x1, y0, z0).color(1f, 1f, 1f).texCoord(u0, v1).emit();
-                builder.position(x0, y0, z0).color(1f, 1f, 1f).texCoord(u1, v1).emit();
-                builder.position(x0, y1, z0).color(1f, 1f, 1f).texCoord(u1, v0).emit();
-            }
-            case SOUTH -> {
-                // +z
-                builder.indices(0, 1, 2, 2, 3, 0);
-                builder.position(x0, y1, z1).color(1f, 1f, 1f).texCoord(u0, v0).emit();
-                builder.position(x0, y0, z1).color(1f, 1f, 1f).texCoord(u0, v1).emit();
-                builder.position(x1, y0, z1).color(1f, 1f, 1f).texCoord(u1, v1).emit();
-                builder.position(x1, y1, z1).color(1f, 1f, 1f).texCoord(u1, v0).emit();
-            }
+        final float u0 = quad.u0();
+        final float v0 = quad.v0();
+        builder.uvRegion(u0, v0, quad.u1() - u0, quad.v1() - v0);
+        builder.normalIndex(direction.id());
+        final int sizeU = axisSize(quad.uAxis(), sizeX, sizeY, sizeZ);
+        final int sizeV = axisSize(quad.vAxis(), sizeX, sizeY, sizeZ);
+        for (int i = 0; i < BakedQuad.VERTEX_COUNT; i++) {
+            builder.position(x + quad.x(i) * sizeX, y + quad.y(i) * sizeY, z + quad.z(i) * sizeZ)
+                .texCoord(quad.u(i) * sizeU, quad.v(i) * sizeV)
+                .emit();
         }
     }
+
+    private static int axisSize(int axis, int sizeX, int sizeY, int sizeZ) {
+        return axis == 0 ? sizeX : (axis == 1 ? sizeY : sizeZ);
+    }
+
+    private BakedQuad getQuad(int rawId, Direction direction) {
+        final BakedBlockModel model = blockModelManager.getBakedModel(rawId);
+        return model != null ? model.face(direction) : null;
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.world.chunk.ClientChunk;
+import freeworld.world.chunk.ChunkRegion;
+import org.joml.FrustumIntersection;
+import org.joml.Vector3dc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedules the background compilation of chunk sections.
+ * <p>
+ * Sections are {@linkplain #enqueue(ClientChunk, int) enqueued} by their chunk,
+ * and at most {@link #maxInFlight()} of them are compiled at the same time.
+ * On each {@linkplain #dispatch(FrustumIntersection, ChunkFrustumCuller, Vector3dc) dispatch},
+ * the free slots go to the sections in the view frustum first, and then to the nearest ones.
+ * Queued sections of closed chunks are dropped;
+ * a chunk cancels the compilation of a section itself when the section is dirtied again.
+ * <p>
+ * All methods except {@link #inFlightCount()} must be called on the render thread.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkCompileScheduler {
+    /**
+     * Added to the priority of sections outside the view frustum, so that they come after all visible sections.
+     */
+    private static final double INVISIBLE_PENALTY = 1.0e12;
+    private static final double HALF_SIZE = ChunkRegion.SIZE * 0.5;
+    private final List<Job> queue = new ArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Runnable onJobTerminated = inFlight::decrementAndGet;
+    private double[] priorities = new double[0];
+    private int maxInFlight = Runtime.getRuntime().availableProcessors();
+
+    private record Job(ClientChunk chunk, int section) {
+    }
+
+    /**
+     * Enqueues a section to compile.
+     * The chunk must not enqueue a section that is still queued.
+     *
+     * @param chunk   the chunk
+     * @param section the index of the section
+     */
+    public void enqueue(ClientChunk chunk, int section) {
+        queue.add(new Job(chunk, section));
+    }
+
+    /**
+     * Starts the compilation of the queued sections with the highest priority, as many as the free slots.
+     *
+     * @param frustum the view frustum
+     * @param culler  the frustum culler, updated for the view frustum
+     * @param camera  the camera position
+     */
+    public void dispatch(FrustumIntersection frustum, ChunkFrustumCuller culler, Vector3dc camera) {
+        final int size = queue.size();
+        int slots = maxInFlight - inFlight.get();
+        if (size == 0 || slots <= 0) {
+            return;
+        }
+        if (priorities.length < size) {
+            priorities = new double[Math.max(size, priorities.length * 2)];
+        }
+        for (int i = 0; i < size; i++) {
+            final Job job = queue.get(i);
+            priorities[i] = job.chunk().isClosed() ? Double.NaN : priority(job, frustum, culler, camera);
+        }
+
+        while (slots > 0) {
+            int best = -1;
+            double bestPriority = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                if (priorities[i] < bestPriority) {
+                    bestPriority = priorities[i];
+                    best = i;
+                }
+            }
+            if (best == -1) {
+                break;
+            }
+            priorities[best] = Double.NaN;
+            final Job job = queue.get(best);
+            inFlight.incrementAndGet();
+            if (job.chunk().startCompile(job.section(), onJobTerminated)) {
+                slots--;
+            } else {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            final Job job = queue.get(i);
+            // the jobs marked with NaN are either dispatched or of a closed chunk
+            if (!Double.isNaN(priorities[i])) {
+                queue.set(kept++, job);
+            }
+        }
+        queue.subList(kept, size).clear();
+    }
+
+    private static double priority(Job job, FrustumIntersection frustum, ChunkFrustumCuller culler, Vector3dc camera) {
+        final ClientChunk chunk = job.chunk();
+        final int section = job.section();
+        final int x = chunk.sectionOriginX(section);
+        final int y = chunk.sectionOriginY(section);
+        final int z = chunk.sectionOriginZ(section);
+        final double dx = x + HALF_SIZE - camera.x();
+        final double dy = y + HALF_SIZE - camera.y();
+        final double dz = z + HALF_SIZE - camera.z();
+        final double distanceSquared = dx * dx + dy * dy + dz * dz;
+        if (culler.test(frustum, chunk.x(), chunk.y(), chunk.z(),
+            x, y, z, x + ChunkRegion.SIZE, y + ChunkRegion.SIZE, z + ChunkRegion.SIZE)) {
+            return distanceSquared;
+        }
+        return distanceSquared + INVISIBLE_PENALTY;
+    }
+
+    /**
+     * Drops all queued sections. Sections being compiled are not affected.
+     */
+    public void clear() {
+        queue.clear();
+    }
+
+    public int queuedCount() {
+        return queue.size();
+    }
+
+    public int inFlightCount() {
+        return inFlight.get();
+    }
+
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets the maximum count of sections compiled at the same time.
+     *
+     * @param maxInFlight the maximum count, at least 1
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException(STR."maxInFlight must be at least 1, got \{maxInFlight}");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+}
@@ -12,8 +12,10 @@ package freeworld.client.render.world;
 
 import freeworld.client.render.builder.VertexBuilder;
 import freeworld.util.Direction;
+import freeworld.world.World;
+import freeworld.world.block.BlockType;
 import freeworld.world.chunk.Chunk;
-import freeworld.world.chunk.ChunkPos;
+import freeworld.world.chunk.ChunkRegion;
 
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
@@ -27,49 +29,81 @@ public final class ChunkCompiler {
     private ChunkCompiler() {
     }
 
-    public static ChunkVertexData compile(VertexBuilder vertexBuilder, BlockRenderer blockRenderer, Chunk chunk) {
-        vertexBuilder.reset();
-        final int cx = chunk.x();
-        final int cy = chunk.y();
-        final int cz = chunk.z();
+    /**
+     * {@return {@code true} if compiling the given chunk would not produce any face}
+     * <p>
+     * This is the case for all-air chunks,
+     * and for uniform solid chunks of which each neighbour is either not loaded or uniform solid.
+     *
+     * @param chunk the chunk
+     */
+    public static boolean hasNoVisibleFace(Chunk chunk) {
+        final BlockType blockType = chunk.uniformBlockType();
+        if (blockType == null) {
+            return false;
+        }
+        if (blockType.air()) {
+            return true;
+        }
+        final World world = chunk.world();
         for (Direction direction : Direction.LIST) {
-            for (int x = 0; x < Chunk.SIZE; x++) {
-                for (int y = 0; y < Chunk.SIZE; y++) {
-                    for (int z = 0; z < Chunk.SIZE; z++) {
-                        final int nx = x + direction.axisX();
-                        final int ny = y + direction.axisY();
-                        final int nz = z + direction.axisZ();
-                        final int absNx = ChunkPos.relativeToAbsolute(cx, nx);
-                        final int absNy = ChunkPos.relativeToAbsolute(cy, ny);
-                        final int absNz = ChunkPos.relativeToAbsolute(cz, nz);
-                        if ((chunk.isInBound(nx, ny, nz) &&
-                             chunk.getBlockType(nx, ny, nz).air()) ||
-                            (chunk.world().isBlockLoaded(absNx, absNy, absNz) &&
-                             chunk.world().getBlockType(absNx, absNy, absNz).air())) {
-                            blockRenderer.renderBlockFace(
-                                vertexBuilder,
-                                chunk.getBlockType(x, y, z),
-                                ChunkPos.relativeToAbsolute(cx, x),
-                                ChunkPos.relativeToAbsolute(cy, y),
-                                ChunkPos.relativeToAbsolute(cz, z),
-                                direction
-                            );
-                        }
-                    }
+            final Chunk neighbor = world.getChunk(
+                chunk.x() + direction.axisX(),
+                chunk.y() + direction.axisY(),
+                chunk.z() + direction.axisZ()
+            );
+            if (neighbor != null) {
+                final BlockType neighborType = neighbor.uniformBlockType();
+                if (neighborType == null || neighborType.air()) {
+                    return false;
                 }
             }
         }
+        return true;
+    }
+
+    /**
+     * Compiles the given section snapshot.
+     * <p>
+     * This method only reads from the snapshot and is safe to call from any thread.
+     * The vertex data is written straight to the staging buffer if it is given and has enough space,
+     * or copied to the heap otherwise.
+     *
+     * @param vertexBuilder the vertex builder
+     * @param blockRenderer the block renderer
+     * @param mesher        the mesher
+     * @param region        the section snapshot
+     * @param stagingBuffer the staging buffer, or {@code null}
+     * @return the vertex data
+     */
+    public static ChunkVertexData compile(
+        VertexBuilder vertexBuilder,
+        BlockRenderer blockRenderer,
+        ChunkMesher mesher,
+        ChunkRegion region,
+        ChunkStagingBuffer stagingBuffer
+    ) {
+        vertexBuilder.reset();
+        mesher.mesh(vertexBuilder, blockRenderer, region);
+        final long visibility = SectionVisibility.compute(region);
 
-        final Arena arena = Arena.ofAuto();
         final MemorySegment vertexDataSlice = vertexBuilder.vertexDataSlice();
-        final MemorySegment indexDataSlice = vertexBuilder.indexDataSlice();
+        final long byteSize = vertexDataSlice.byteSize();
+        final int indexCount = QuadIndexBuffer.indexCount(vertexBuilder.vertexCount());
+        if (stagingBuffer != null && byteSize != 0) {
+            final ChunkStagingBuffer.Region stagingRegion = stagingBuffer.stage(vertexDataSlice);
+            if (stagingRegion != null) {
+                return new ChunkVertexData(vertexBuilder.vertexLayout(), indexCount, stagingRegion.segment(), stagingRegion, visibility);
+            }
+        }
+
+        final Arena arena = Arena.ofAuto();
         return new ChunkVertexData(
             vertexBuilder.vertexLayout(),
-            vertexBuilder.indexCount(),
-            arena.allocateFrom(ValueLayout.JAVA_BYTE, vertexDataSlice, ValueLayout.JAVA_BYTE, 0L, vertexDataSlice.byteSize()),
-            arena.allocateFrom(ValueLayout.JAVA_BYTE, indexDataSlice, ValueLayout.JAVA_BYTE, 0L, indexDataSlice.byteSize()),
-            vertexBuilder.shouldReallocateVertexData(),
-            vertexBuilder.shouldReallocateIndexData()
+            indexCount,
+            arena.allocateFrom(ValueLayout.JAVA_BYTE, vertexDataSlice, ValueLayout.JAVA_BYTE, 0L, byteSize),
+            null,
+            visibility
         );
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.gl.GLResource;
+import freeworld.client.render.gl.GLStateMgr;
+import overrungl.opengl.GLFlags;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * The draws of the chunk sections visible in a frame, all from the {@link ChunkVertexArena}, submitted in a single call.
+ * <p>
+ * If {@linkplain #isIndirectSupported(GLStateMgr) supported}, the draws are written as commands to an indirect buffer
+ * and submitted with {@code glMultiDrawElementsIndirect};
+ * otherwise they are submitted with {@code glMultiDrawElementsBaseVertex}.
+ * <p>
+ * This class is used on the render thread only.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkDrawList implements GLResource {
+    private static final int INITIAL_CAPACITY = 1024;
+    /**
+     * {@code DrawElementsIndirectCommand}: count, instanceCount, firstIndex, baseVertex, baseInstance.
+     */
+    private static final int COMMAND_INTS = 5;
+    private static final long COMMAND_BYTES = COMMAND_INTS * Integer.BYTES;
+    private final boolean indirect;
+    private Arena arena;
+    /**
+     * The indirect commands, or {@code null} if not {@linkplain #indirect}.
+     */
+    private MemorySegment commands;
+    private MemorySegment counts;
+    private MemorySegment baseVertices;
+    /**
+     * The offsets into the quad index buffer, all {@code NULL}.
+     */
+    private MemorySegment indices;
+    private int indirectBuffer = 0;
+    private int capacity = 0;
+    private int size = 0;
+    private int maxIndexCount = 0;
+
+    public ChunkDrawList(GLStateMgr gl) {
+        this.indirect = isIndirectSupported(gl);
+        grow(INITIAL_CAPACITY);
+    }
+
+    /**
+     * {@return {@code true} if the given context supports multi-draw-indirect}
+     *
+     * @param gl the OpenGL context
+     */
+    public static boolean isIndirectSupported(GLStateMgr gl) {
+        final GLFlags flags = gl.flags();
+        return flags.GL43 || flags.GL_ARB_multi_draw_indirect;
+    }
+
+    private void grow(int newCapacity) {
+        final Arena newArena = Arena.ofConfined();
+        if (indirect) {
+            final MemorySegment newCommands = newArena.allocate(ValueLayout.JAVA_INT, (long) newCapacity * COMMAND_INTS);
+            if (arena != null) {
+                MemorySegment.copy(commands, 0L, newCommands, 0L, size * COMMAND_BYTES);
+            }
+            commands = newCommands;
+        } else {
+            final MemorySegment newCounts = newArena.allocate(ValueLayout.JAVA_INT, newCapacity);
+            final MemorySegment newBaseVertices = newArena.allocate(ValueLayout.JAVA_INT, newCapacity);
+            if (arena != null) {
+                MemorySegment.copy(counts, 0L, newCounts, 0L, (long) size * Integer.BYTES);
+                MemorySegment.copy(baseVertices, 0L, newBaseVertices, 0L, (long) size * Integer.BYTES);
+            }
+            counts = newCounts;
+            baseVertices = newBaseVertices;
+            indices = newArena.allocate(ValueLayout.ADDRESS, newCapacity);
+        }
+        if (arena != null) {
+            arena.close();
+        }
+        arena = newArena;
+        capacity = newCapacity;
+    }
+
+    /**
+     * Adds a draw.
+     *
+     * @param indexCount the count of indices
+     * @param baseVertex the base vertex in the vertex arena
+     */
+    public void add(int indexCount, int baseVertex) {
+        if (size == capacity) {
+            grow(capacity * 2);
+        }
+        if (indirect) {
+            final long index = (long) size * COMMAND_INTS;
+            commands.setAtIndex(ValueLayout.JAVA_INT, index, indexCount);
+            commands.setAtIndex(ValueLayout.JAVA_INT, index + 1, 1);
+            commands.setAtIndex(ValueLayout.JAVA_INT, index + 2, 0);
+            commands.setAtIndex(ValueLayout.JAVA_INT, index + 3, baseVertex);
+            commands.setAtIndex(ValueLayout.JAVA_INT, index + 4, 0);
+        } else {
+            counts.setAtIndex(ValueLayout.JAVA_INT, size, indexCount);
+            baseVertices.setAtIndex(ValueLayout.JAVA_INT, size, baseVertex);
+        }
+        size++;
+        maxIndexCount = Math.max(maxIndexCount, indexCount);
+    }
+
+    /**
+     * Submits all draws. The vertex array of the vertex arena must be bound.
+     *
+     * @param gl              the OpenGL context
+     * @param quadIndexBuffer the quad index buffer
+     */
+    public void draw(GLStateMgr gl, QuadIndexBuffer quadIndexBuffer) {
+        if (size == 0) {
+            return;
+        }
+        quadIndexBuffer.bind(gl, maxIndexCount / QuadIndexBuffer.INDICES_PER_QUAD);
+        if (indirect) {
+            if (indirectBuffer == 0) indirectBuffer = gl.genBuffers();
+            gl.bindBuffer(GLStateMgr.DRAW_INDIRECT_BUFFER, indirectBuffer);
+            // orphan the storage of the last frame instead of waiting for it
+            gl.bufferData(GLStateMgr.DRAW_INDIRECT_BUFFER, commands.asSlice(0L, size * COMMAND_BYTES), GLStateMgr.STREAM_DRAW);
+            gl.multiDrawElementsIndirect(GLStateMgr.TRIANGLES, GLStateMgr.UNSIGNED_INT, MemorySegment.NULL, size, 0);
+            gl.bindBuffer(GLStateMgr.DRAW_INDIRECT_BUFFER, 0);
+        } else {
+            gl.multiDrawElementsBaseVertex(GLStateMgr.TRIANGLES, counts, GLStateMgr.UNSIGNED_INT, indices, size, baseVertices);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        maxIndexCount = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * {@return {@code true} if the draws are submitted with multi-draw-indirect}
+     */
+    public boolean isIndirect() {
+        return indirect;
+    }
+
+    @Override
+    public void close(GLStateMgr gl) {
+        if (indirectBuffer != 0) {
+            gl.deleteBuffers(indirectBuffer);
+            indirectBuffer = 0;
+        }
+        arena.close();
+    }
+}
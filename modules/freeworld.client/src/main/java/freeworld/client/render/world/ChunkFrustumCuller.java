@@ -0,0 +1,235 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.world.chunk.Chunk;
+import freeworld.world.chunk.ChunkPos;
+import org.joml.*;
+
+import java.lang.Math;
+import java.util.Arrays;
+
+/**
+ * Culls the chunks around the camera against the view frustum, a cluster of
+ * {@value #CLUSTER_SIZE}x{@value #CLUSTER_SIZE}x{@value #CLUSTER_SIZE} chunks at a time.
+ * <p>
+ * A cluster fully outside or fully inside the frustum decides all of its chunks at once;
+ * only the chunks of the clusters crossing the frustum are tested one by one.
+ * Each chunk ends up {@link #OUTSIDE}, {@link #INSIDE}, or {@link #INTERSECT}, the last meaning that
+ * the parts of the chunk still have to be tested against the current frustum.
+ * <p>
+ * The boxes are grown by the size of a chunk on every side, so that the result stays valid while the camera
+ * moves inside its chunk. It is therefore computed again only when the camera enters another chunk,
+ * or when the rotation or the projection changes.
+ * <p>
+ * This class is used on the render thread only.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkFrustumCuller {
+    public static final byte OUTSIDE = 0;
+    public static final byte INTERSECT = 1;
+    public static final byte INSIDE = 2;
+    /**
+     * The count of chunks on each axis of a cluster.
+     */
+    public static final int CLUSTER_SIZE = 4;
+    private static final int CHUNK_SPAN = WorldRenderer.RENDER_RADIUS + 1;
+    private static final int GRID_SIZE = CHUNK_SPAN * 2 + 1;
+    /**
+     * The distance the camera can move from where the result was computed without leaving its chunk, on each axis.
+     */
+    private static final float MARGIN = Chunk.SIZE;
+    /**
+     * The change of rotation, in degrees, below which the result is reused.
+     */
+    private static final double ROTATION_EPSILON = 0.01;
+    private static final float PROJECTION_EPSILON = 1.0e-6f;
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final byte[] states = new byte[GRID_SIZE * GRID_SIZE * GRID_SIZE];
+    private final Matrix4f projection = new Matrix4f();
+    private final Vector2d rotation = new Vector2d();
+    private boolean valid = false;
+    private int originX;
+    private int originY;
+    private int originZ;
+    private int recomputeCount = 0;
+    private int clusterTestCount = 0;
+    private int chunkTestCount = 0;
+
+    /**
+     * Updates the result for the given view, if it has changed.
+     *
+     * @param projection     the projection matrix
+     * @param projectionView the projection-view matrix
+     * @param camera         the camera position
+     * @param rotation       the camera rotation, in degrees
+     * @return {@code true} if the result was computed again
+     */
+    public boolean update(Matrix4fc projection, Matrix4fc projectionView, Vector3dc camera, Vector2dc rotation) {
+        final int newOriginX = ChunkPos.absoluteToChunk((int) Math.floor(camera.x())) - CHUNK_SPAN;
+        final int newOriginY = ChunkPos.absoluteToChunk((int) Math.floor(camera.y())) - CHUNK_SPAN;
+        final int newOriginZ = ChunkPos.absoluteToChunk((int) Math.floor(camera.z())) - CHUNK_SPAN;
+        if (valid &&
+            newOriginX == originX &&
+            newOriginY == originY &&
+            newOriginZ == originZ &&
+            Math.abs(rotation.x() - this.rotation.x()) <= ROTATION_EPSILON &&
+            Math.abs(rotation.y() - this.rotation.y()) <= ROTATION_EPSILON &&
+            this.projection.equals(projection, PROJECTION_EPSILON)) {
+            return false;
+        }
+        originX = newOriginX;
+        originY = newOriginY;
+        originZ = newOriginZ;
+        this.rotation.set(rotation);
+        this.projection.set(projection);
+        frustum.set(projectionView);
+        compute();
+        valid = true;
+        recomputeCount++;
+        return true;
+    }
+
+    private void compute() {
+        clusterTestCount = 0;
+        chunkTestCount = 0;
+        final int maxX = originX + GRID_SIZE - 1;
+        final int maxY = originY + GRID_SIZE - 1;
+        final int maxZ = originZ + GRID_SIZE - 1;
+        for (int cy = Math.floorDiv(originY, CLUSTER_SIZE), cy1 = Math.floorDiv(maxY, CLUSTER_SIZE); cy <= cy1; cy++) {
+            final int fromY = Math.max(cy * CLUSTER_SIZE, originY);
+            final int toY = Math.min(cy * CLUSTER_SIZE + CLUSTER_SIZE - 1, maxY);
+            for (int cz = Math.floorDiv(originZ, CLUSTER_SIZE), cz1 = Math.floorDiv(maxZ, CLUSTER_SIZE); cz <= cz1; cz++) {
+                final int fromZ = Math.max(cz * CLUSTER_SIZE, originZ);
+                final int toZ = Math.min(cz * CLUSTER_SIZE + CLUSTER_SIZE - 1, maxZ);
+                for (int cx = Math.floorDiv(originX, CLUSTER_SIZE), cx1 = Math.floorDiv(maxX, CLUSTER_SIZE); cx <= cx1; cx++) {
+                    final int fromX = Math.max(cx * CLUSTER_SIZE, originX);
+                    final int toX = Math.min(cx * CLUSTER_SIZE + CLUSTER_SIZE - 1, maxX);
+                    clusterTestCount++;
+                    final byte clusterState = intersect(fromX, fromY, fromZ, toX, toY, toZ);
+                    for (int y = fromY; y <= toY; y++) {
+                        for (int z = fromZ; z <= toZ; z++) {
+                            for (int x = fromX; x <= toX; x++) {
+                                final byte state;
+                                if (clusterState == INTERSECT) {
+                                    chunkTestCount++;
+                                    state = intersect(x, y, z, x, y, z);
+                                } else {
+                                    state = clusterState;
+                                }
+                                states[gridIndex(x - originX, y - originY, z - originZ)] = state;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests the chunks in the given inclusive range, grown by {@link #MARGIN}.
+     */
+    private byte intersect(int fromX, int fromY, int fromZ, int toX, int toY, int toZ) {
+        final int result = frustum.intersectAab(
+            fromX * Chunk.SIZE - MARGIN,
+            fromY * Chunk.SIZE - MARGIN,
+            fromZ * Chunk.SIZE - MARGIN,
+            (toX + 1) * Chunk.SIZE + MARGIN,
+            (toY + 1) * Chunk.SIZE + MARGIN,
+            (toZ + 1) * Chunk.SIZE + MARGIN
+        );
+        return switch (result) {
+            case FrustumIntersection.INSIDE -> INSIDE;
+            case FrustumIntersection.INTERSECT -> INTERSECT;
+            default -> OUTSIDE;
+        };
+    }
+
+    private static int gridIndex(int x, int y, int z) {
+        return (y * GRID_SIZE + z) * GRID_SIZE + x;
+    }
+
+    /**
+     * {@return the state of the given chunk}
+     * Chunks out of the range around the camera, or before the first {@linkplain #update update},
+     * are {@link #INTERSECT}.
+     *
+     * @param x the x coordinate of the chunk
+     * @param y the y coordinate of the chunk
+     * @param z the z coordinate of the chunk
+     */
+    public byte chunkState(int x, int y, int z) {
+        final int gx = x - originX;
+        final int gy = y - originY;
+        final int gz = z - originZ;
+        if (!valid || gx < 0 || gy < 0 || gz < 0 || gx >= GRID_SIZE || gy >= GRID_SIZE || gz >= GRID_SIZE) {
+            return INTERSECT;
+        }
+        return states[gridIndex(gx, gy, gz)];
+    }
+
+    /**
+     * Tests the given box, in a chunk, against the current frustum, using the state of the chunk where possible.
+     *
+     * @param frustum the current view frustum
+     * @param chunkX  the x coordinate of the chunk
+     * @param chunkY  the y coordinate of the chunk
+     * @param chunkZ  the z coordinate of the chunk
+     * @param minX    the minimum x coordinate of the box
+     * @param minY    the minimum y coordinate of the box
+     * @param minZ    the minimum z coordinate of the box
+     * @param maxX    the maximum x coordinate of the box
+     * @param maxY    the maximum y coordinate of the box
+     * @param maxZ    the maximum z coordinate of the box
+     * @return {@code true} if the box may be visible
+     */
+    public boolean test(FrustumIntersection frustum,
+                        int chunkX, int chunkY, int chunkZ,
+                        float minX, float minY, float minZ,
+                        float maxX, float maxY, float maxZ) {
+        return switch (chunkState(chunkX, chunkY, chunkZ)) {
+            case INSIDE -> true;
+            case OUTSIDE -> false;
+            default -> frustum.testAab(minX, minY, minZ, maxX, maxY, maxZ);
+        };
+    }
+
+    /**
+     * Forces the result to be computed again on the next {@linkplain #update update}.
+     */
+    public void invalidate() {
+        valid = false;
+        Arrays.fill(states, INTERSECT);
+    }
+
+    /**
+     * {@return the count of times the result was computed}
+     */
+    public int recomputeCount() {
+        return recomputeCount;
+    }
+
+    /**
+     * {@return the count of clusters tested by the last computation}
+     */
+    public int clusterTestCount() {
+        return clusterTestCount;
+    }
+
+    /**
+     * {@return the count of single chunks tested by the last computation}
+     */
+    public int chunkTestCount() {
+        return chunkTestCount;
+    }
+}
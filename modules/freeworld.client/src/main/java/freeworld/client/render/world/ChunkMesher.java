@@ -0,0 +1,33 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.builder.VertexBuilder;
+import freeworld.world.chunk.ChunkRegion;
+
+/**
+ * Turns the visible faces of a section snapshot into quads.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public interface ChunkMesher {
+    /**
+     * Emits one quad per visible block face.
+     */
+    ChunkMesher NAIVE = new NaiveChunkMesher();
+    /**
+     * Merges coplanar visible faces of the same block type into larger quads.
+     */
+    ChunkMesher GREEDY = new GreedyChunkMesher();
+
+    void mesh(VertexBuilder vertexBuilder, BlockRenderer blockRenderer, ChunkRegion region);
+}
@@ -0,0 +1,253 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.gl.GLResource;
+import freeworld.client.render.gl.GLStateMgr;
+import overrungl.opengl.GLFlags;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A persistently mapped ring buffer that compile workers write chunk meshes into,
+ * and from which the render thread copies them to the vertex buffers on the GPU.
+ * <p>
+ * {@linkplain #stage(MemorySegment) Staging} data and {@linkplain Region#release() releasing} regions is thread-safe.
+ * A region {@linkplain Region#copyTo(GLStateMgr, int, long) copied} on the render thread is released
+ * once the GPU has passed the {@linkplain #fence(GLStateMgr) fence} of its frame, as found by {@link #retire(GLStateMgr)}.
+ * Space is reclaimed in allocation order, so a region that is never released blocks the ring;
+ * when the ring is full, {@link #stage(MemorySegment)} returns {@code null} and the caller copies the mesh to the heap instead.
+ * <p>
+ * This buffer requires {@code ARB_buffer_storage}, see {@link #isSupported(GLStateMgr)}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkStagingBuffer implements GLResource {
+    public static final long DEFAULT_CAPACITY = 32L * 1024 * 1024;
+    private static final long ALIGNMENT = 64L;
+    private final long capacity;
+    private final int buffer;
+    private final MemorySegment mapped;
+    /**
+     * Held for reading while writing to the mapped memory, and for writing while unmapping it.
+     */
+    private final ReadWriteLock mappingLock = new ReentrantReadWriteLock();
+    private boolean closed = false;
+    /**
+     * Live regions in allocation order, guarded by {@code this}.
+     */
+    private final ArrayDeque<Region> live = new ArrayDeque<>();
+    /**
+     * The virtual offsets increase monotonically; the physical offset is the virtual offset modulo the capacity.
+     */
+    private long head = 0L;
+    private long tail = 0L;
+    private List<Region> frameRegions = new ArrayList<>();
+    private final ArrayDeque<Fence> fences = new ArrayDeque<>();
+
+    private record Fence(MemorySegment sync, List<Region> regions) {
+    }
+
+    /**
+     * A region of the staging buffer holding a chunk mesh.
+     */
+    public final class Region {
+        private final long offset;
+        private final long end;
+        private final MemorySegment segment;
+        private boolean released = false;
+
+        private Region(long offset, long end, MemorySegment segment) {
+            this.offset = offset;
+            this.end = end;
+            this.segment = segment;
+        }
+
+        /**
+         * {@return the mapped memory of this region}
+         */
+        public MemorySegment segment() {
+            return segment;
+        }
+
+        /**
+         * Copies this region to the given buffer and releases this region once the copy is done.
+         * Called on the render thread.
+         *
+         * @param gl     the OpenGL context
+         * @param target the target of the destination buffer
+         * @param offset the offset in the destination buffer
+         */
+        public void copyTo(GLStateMgr gl, int target, long offset) {
+            gl.bindBuffer(GLStateMgr.COPY_READ_BUFFER, buffer);
+            gl.copyBufferSubData(GLStateMgr.COPY_READ_BUFFER, target, this.offset, offset, segment.byteSize());
+            frameRegions.add(this);
+        }
+
+        /**
+         * Releases this region without copying it. This method is thread-safe.
+         */
+        public void release() {
+            ChunkStagingBuffer.this.release(this);
+        }
+    }
+
+    public ChunkStagingBuffer(GLStateMgr gl, long capacity) {
+        this.capacity = capacity;
+        this.buffer = gl.genBuffers();
+        final int flags = GLStateMgr.MAP_WRITE_BIT | GLStateMgr.MAP_PERSISTENT_BIT | GLStateMgr.MAP_COHERENT_BIT;
+        gl.bindBuffer(GLStateMgr.COPY_READ_BUFFER, buffer);
+        gl.bufferStorage(GLStateMgr.COPY_READ_BUFFER, capacity, MemorySegment.NULL, flags);
+        this.mapped = gl.mapBufferRange(GLStateMgr.COPY_READ_BUFFER, 0L, capacity, flags).reinterpret(capacity);
+    }
+
+    /**
+     * {@return {@code true} if the given context supports persistently mapped buffers}
+     *
+     * @param gl the OpenGL context
+     */
+    public static boolean isSupported(GLStateMgr gl) {
+        final GLFlags flags = gl.flags();
+        return flags.GL44 || flags.GL_ARB_buffer_storage;
+    }
+
+    /**
+     * Copies the given data to a new region. This method is thread-safe.
+     *
+     * @param source the data, not empty
+     * @return the region, or {@code null} if there is not enough space or this buffer is closed
+     */
+    public Region stage(MemorySegment source) {
+        final Lock lock = mappingLock.readLock();
+        lock.lock();
+        try {
+            if (closed) {
+                return null;
+            }
+            final long size = source.byteSize();
+            final Region region = allocate(size);
+            if (region != null) {
+                MemorySegment.copy(source, 0L, region.segment, 0L, size);
+            }
+            return region;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private synchronized Region allocate(long size) {
+        if (size > capacity) {
+            return null;
+        }
+        long offset = head;
+        // a region does not wrap around the end of the buffer
+        if (offset % capacity + size > capacity) {
+            offset += capacity - offset % capacity;
+        }
+        final long end = alignUp(offset + size);
+        if (end - tail > capacity) {
+            return null;
+        }
+        final long physicalOffset = offset % capacity;
+        final Region region = new Region(physicalOffset, end, mapped.asSlice(physicalOffset, size));
+        live.addLast(region);
+        head = end;
+        return region;
+    }
+
+    private static long alignUp(long offset) {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private synchronized void release(Region region) {
+        if (region.released) {
+            return;
+        }
+        region.released = true;
+        Region first;
+        while ((first = live.peekFirst()) != null && first.released) {
+            live.pollFirst();
+            tail = first.end;
+        }
+        if (live.isEmpty()) {
+            tail = head;
+        }
+    }
+
+    /**
+     * Inserts a fence after the copies of this frame. Called on the render thread.
+     *
+     * @param gl the OpenGL context
+     */
+    public void fence(GLStateMgr gl) {
+        if (frameRegions.isEmpty()) {
+            return;
+        }
+        fences.addLast(new Fence(gl.fenceSync(GLStateMgr.SYNC_GPU_COMMANDS_COMPLETE, 0), frameRegions));
+        frameRegions = new ArrayList<>();
+    }
+
+    /**
+     * Releases the regions of which the copies are done, without waiting. Called on the render thread.
+     *
+     * @param gl the OpenGL context
+     */
+    public void retire(GLStateMgr gl) {
+        Fence fence;
+        while ((fence = fences.peekFirst()) != null) {
+            final int status = gl.clientWaitSync(fence.sync(), 0, 0L);
+            if (status != GLStateMgr.ALREADY_SIGNALED && status != GLStateMgr.CONDITION_SATISFIED) {
+                break;
+            }
+            fences.pollFirst();
+            gl.deleteSync(fence.sync());
+            for (Region region : fence.regions()) {
+                release(region);
+            }
+        }
+    }
+
+    /**
+     * {@return the bytes allocated, including the regions waiting for their copy to finish}
+     */
+    public synchronized long usedBytes() {
+        return head - tail;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close(GLStateMgr gl) {
+        final Lock lock = mappingLock.writeLock();
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        for (Fence fence : fences) {
+            gl.deleteSync(fence.sync());
+        }
+        fences.clear();
+        gl.bindBuffer(GLStateMgr.COPY_READ_BUFFER, buffer);
+        gl.unmapBuffer(GLStateMgr.COPY_READ_BUFFER);
+        gl.deleteBuffers(buffer);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.gl.GLStateMgr;
+import freeworld.client.world.chunk.ClientChunk;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The stage uploading compiled chunk sections to the GPU.
+ * <p>
+ * Compiled sections are {@linkplain #submit(ClientChunk, int, int, ChunkVertexData) submitted} from any thread,
+ * and {@linkplain #upload(GLStateMgr) uploaded} on the render thread in submission order,
+ * until either the byte budget or the time budget of the frame is spent.
+ * The first section of a frame is always uploaded, so that a section larger than the budget is not stuck.
+ * Sections superseded by a newer compile, or of closed chunks, are dropped without counting against the budget.
+ * <p>
+ * If there is a {@link ChunkStagingBuffer}, the sections in it are copied on the GPU,
+ * and the staging regions are recycled once the copies are done.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkUploader {
+    public static final long DEFAULT_BYTE_BUDGET = 4L * 1024 * 1024;
+    public static final Duration DEFAULT_TIME_BUDGET = Duration.ofMillis(2);
+    private final ChunkStagingBuffer stagingBuffer;
+    private final Queue<Upload> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private long byteBudget = DEFAULT_BYTE_BUDGET;
+    private long timeBudgetNanos = DEFAULT_TIME_BUDGET.toNanos();
+    private int uploadedCount = 0;
+    private long uploadedBytes = 0L;
+    private long uploadNanos = 0L;
+    private int droppedCount = 0;
+    private long totalUploadedBytes = 0L;
+
+    private record Upload(ClientChunk chunk, int section, int generation, ChunkVertexData data) {
+    }
+
+    /**
+     * Creates the chunk uploader.
+     *
+     * @param stagingBuffer the staging buffer that the submitted vertex data may live in, or {@code null}
+     */
+    public ChunkUploader(ChunkStagingBuffer stagingBuffer) {
+        this.stagingBuffer = stagingBuffer;
+    }
+
+    /**
+     * Submits a compiled section. This method is thread-safe.
+     *
+     * @param chunk      the chunk
+     * @param section    the index of the section
+     * @param generation the generation of the section when it was compiled
+     * @param data       the vertex data
+     */
+    public void submit(ClientChunk chunk, int section, int generation, ChunkVertexData data) {
+        queue.add(new Upload(chunk, section, generation, data));
+        queueDepth.incrementAndGet();
+    }
+
+    /**
+     * Uploads submitted sections within the budget of this frame.
+     *
+     * @param gl the OpenGL context
+     */
+    public void upload(GLStateMgr gl) {
+        final long start = System.nanoTime();
+        uploadedCount = 0;
+        uploadedBytes = 0L;
+        droppedCount = 0;
+        if (stagingBuffer != null) {
+            stagingBuffer.retire(gl);
+        }
+        Upload upload;
+        while ((upload = queue.peek()) != null) {
+            final ClientChunk chunk = upload.chunk();
+            if (!chunk.acceptsMesh(upload.section(), upload.generation())) {
+                queue.poll();
+                queueDepth.decrementAndGet();
+                upload.data().release();
+                droppedCount++;
+                continue;
+            }
+            final long byteSize = upload.data().vertexData().byteSize();
+            if (uploadedCount > 0 &&
+                (uploadedBytes + byteSize > byteBudget || System.nanoTime() - start >= timeBudgetNanos)) {
+                break;
+            }
+            queue.poll();
+            queueDepth.decrementAndGet();
+            chunk.uploadSection(gl, upload.section(), upload.data());
+            uploadedCount++;
+            uploadedBytes += byteSize;
+        }
+        if (stagingBuffer != null) {
+            stagingBuffer.fence(gl);
+        }
+        totalUploadedBytes += uploadedBytes;
+        uploadNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Drops all submitted sections.
+     */
+    public void clear() {
+        Upload upload;
+        while ((upload = queue.poll()) != null) {
+            queueDepth.decrementAndGet();
+            upload.data().release();
+        }
+    }
+
+    /**
+     * {@return the count of sections waiting for upload}
+     */
+    public int queueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * {@return the count of sections uploaded in the last frame}
+     */
+    public int uploadedCount() {
+        return uploadedCount;
+    }
+
+    /**
+     * {@return the bytes uploaded in the last frame}
+     */
+    public long uploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * {@return the time spent uploading in the last frame, in nanoseconds}
+     */
+    public long uploadNanos() {
+        return uploadNanos;
+    }
+
+    /**
+     * {@return the count of outdated sections dropped in the last frame}
+     */
+    public int droppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * {@return the bytes uploaded since this uploader was created}
+     */
+    public long totalUploadedBytes() {
+        return totalUploadedBytes;
+    }
+
+    public long byteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * Sets the maximum bytes uploaded in a frame.
+     *
+     * @param byteBudget the budget in bytes, at least 0
+     */
+    public void setByteBudget(long byteBudget) {
+        if (byteBudget < 0) {
+            throw new IllegalArgumentException(STR."byteBudget must not be negative, got \{byteBudget}");
+        }
+        this.byteBudget = byteBudget;
+    }
+
+    public Duration timeBudget() {
+        return Duration.ofNanos(timeBudgetNanos);
+    }
+
+    /**
+     * Sets the maximum time spent uploading in a frame.
+     *
+     * @param timeBudget the budget, not negative
+     */
+    public void setTimeBudget(Duration timeBudget) {
+        if (timeBudget.isNegative()) {
+            throw new IllegalArgumentException(STR."timeBudget must not be negative, got \{timeBudget}");
+        }
+        this.timeBudgetNanos = timeBudget.toNanos();
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.gl.GLResource;
+import freeworld.client.render.gl.GLStateMgr;
+import freeworld.client.render.model.VertexLayout;
+import freeworld.util.Logging;
+import org.slf4j.Logger;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single vertex buffer holding the meshes of all chunk sections, drawn through one vertex array.
+ * <p>
+ * The buffer is divided into pages of {@value #PAGE_VERTICES} vertices,
+ * and each mesh takes a run of consecutive pages from a first-fit free list.
+ * The origin of the section owning each page is stored in a buffer texture,
+ * which the vertex shader reads at {@code gl_VertexID / PAGE_VERTICES};
+ * a mesh is then drawn with its {@linkplain Allocation#baseVertex() base vertex}.
+ * <p>
+ * When no free run is long enough, all meshes are moved to the front of a new buffer,
+ * which is larger if the free pages are not enough in total.
+ * This is {@linkplain #defragment(GLStateMgr) defragmentation}, and it moves allocations;
+ * their base vertex must be read again after any allocation.
+ * <p>
+ * All methods except {@link Allocation#free()} must be called on the render thread.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkVertexArena implements GLResource {
+    private static final Logger logger = Logging.caller();
+    /**
+     * The vertices in a page, defined as {@code PAGE_VERTICES} in {@code chunk.vert} when it is compiled.
+     * <p>
+     * Greedy meshes of most sections have tens to hundreds of vertices, and every mesh wastes the tail of its
+     * last page; small pages keep that waste low, at the cost of one origin texel per page.
+     */
+    public static final int PAGE_VERTICES = 64;
+    private static final int INITIAL_PAGE_COUNT = 16384;
+    private static final int ORIGIN_INTS = 4;
+    private final VertexLayout vertexLayout;
+    private final long pageBytes;
+    /**
+     * The free runs of pages, from the first page to the page count.
+     */
+    private final TreeMap<Integer, Integer> freeRuns = new TreeMap<>();
+    private final List<Allocation> allocations = new ArrayList<>();
+    private final Queue<Allocation> pendingFrees = new ConcurrentLinkedQueue<>();
+    private final Arena originArena = Arena.ofConfined();
+    private MemorySegment originScratch = MemorySegment.NULL;
+    private int[] pageOrigins;
+    private final int vao;
+    private int vbo;
+    private final int originBuffer;
+    private final int originTexture;
+    private int pageCount;
+    private int usedPages = 0;
+    private long usedBytes = 0L;
+    private int defragmentCount = 0;
+
+    /**
+     * A run of pages holding a mesh.
+     */
+    public final class Allocation {
+        private int index;
+        private int firstPage;
+        private final int pageCount;
+        private final long byteSize;
+        private final int originX;
+        private final int originY;
+        private final int originZ;
+        private boolean freed = false;
+
+        private Allocation(int firstPage, int pageCount, long byteSize, int originX, int originY, int originZ) {
+            this.firstPage = firstPage;
+            this.pageCount = pageCount;
+            this.byteSize = byteSize;
+            this.originX = originX;
+            this.originY = originY;
+            this.originZ = originZ;
+        }
+
+        /**
+         * {@return the index of the first vertex of this allocation}
+         */
+        public int baseVertex() {
+            return firstPage * PAGE_VERTICES;
+        }
+
+        private long byteOffset() {
+            return firstPage * pageBytes;
+        }
+
+        /**
+         * Frees this allocation. This method is thread-safe; the pages are reused from the next allocation.
+         */
+        public void free() {
+            pendingFrees.add(this);
+        }
+    }
+
+    public ChunkVertexArena(GLStateMgr gl, VertexLayout vertexLayout) {
+        this.vertexLayout = vertexLayout;
+        this.pageBytes = vertexLayout.layout().byteSize() * PAGE_VERTICES;
+        this.pageCount = INITIAL_PAGE_COUNT;
+        this.pageOrigins = new int[pageCount * ORIGIN_INTS];
+        freeRuns.put(0, pageCount);
+
+        this.vbo = gl.genBuffers();
+        gl.bindBuffer(GLStateMgr.COPY_WRITE_BUFFER, vbo);
+        gl.bufferData(GLStateMgr.COPY_WRITE_BUFFER, pageCount * pageBytes, MemorySegment.NULL, GLStateMgr.DYNAMIC_DRAW);
+        this.vao = gl.genVertexArrays();
+        specifyVertexArray(gl);
+
+        this.originBuffer = gl.genBuffers();
+        gl.bindBuffer(GLStateMgr.TEXTURE_BUFFER, originBuffer);
+        gl.bufferData(GLStateMgr.TEXTURE_BUFFER, (long) pageOrigins.length * Integer.BYTES, MemorySegment.NULL, GLStateMgr.DYNAMIC_DRAW);
+        this.originTexture = gl.genTextures();
+        gl.activeTexture(GLStateMgr.TEXTURE1);
+        gl.bindTexture(GLStateMgr.TEXTURE_BUFFER, originTexture);
+        gl.texBuffer(GLStateMgr.TEXTURE_BUFFER, GLStateMgr.RGBA32I, originBuffer);
+        gl.activeTexture(GLStateMgr.TEXTURE0);
+    }
+
+    private void specifyVertexArray(GLStateMgr gl) {
+        gl.setVertexArrayBinding(vao);
+        gl.setArrayBufferBinding(vbo);
+        vertexLayout.enableAttribs(gl);
+        vertexLayout.specifyAttribPointers(gl);
+    }
+
+    /**
+     * Allocates pages for the given vertex data and uploads it.
+     *
+     * @param gl      the OpenGL context
+     * @param data    the vertex data, not empty
+     * @param originX the x of the section origin
+     * @param originY the y of the section origin
+     * @param originZ the z of the section origin
+     * @return the allocation
+     */
+    public Allocation upload(GLStateMgr gl, ChunkVertexData data, int originX, int originY, int originZ) {
+        collectFrees();
+        final long byteSize = data.vertexData().byteSize();
+        final int pages = Math.toIntExact((byteSize + pageBytes - 1) / pageBytes);
+        int firstPage = findFreeRun(pages);
+        if (firstPage == -1) {
+            final int freePages = pageCount - usedPages;
+            if (freePages >= pages) {
+                relocate(gl, pageCount);
+            } else {
+                int newPageCount = pageCount;
+                while (newPageCount - usedPages < pages) {
+                    newPageCount = newPageCount * 3 / 2;
+                }
+                relocate(gl, newPageCount);
+            }
+            firstPage = findFreeRun(pages);
+        }
+        takeRun(firstPage, pages);
+
+        final Allocation allocation = new Allocation(firstPage, pages, byteSize, originX, originY, originZ);
+        allocation.index = allocations.size();
+        allocations.add(allocation);
+        usedPages += pages;
+        usedBytes += byteSize;
+
+        gl.bindBuffer(GLStateMgr.COPY_WRITE_BUFFER, vbo);
+        final ChunkStagingBuffer.Region stagingRegion = data.stagingRegion();
+        if (stagingRegion != null) {
+            stagingRegion.copyTo(gl, GLStateMgr.COPY_WRITE_BUFFER, allocation.byteOffset());
+        } else {
+            gl.bufferSubData(GLStateMgr.COPY_WRITE_BUFFER, allocation.byteOffset(), data.vertexData());
+        }
+        writeOrigins(gl, allocation);
+        return allocation;
+    }
+
+    private void writeOrigins(GLStateMgr gl, Allocation allocation) {
+        final int ints = allocation.pageCount * ORIGIN_INTS;
+        if (originScratch.byteSize() < (long) ints * Integer.BYTES) {
+            originScratch = originArena.allocate(ValueLayout.JAVA_INT, Math.max(ints, 64 * ORIGIN_INTS));
+        }
+        for (int page = 0; page < allocation.pageCount; page++) {
+            final int i = (allocation.firstPage + page) * ORIGIN_INTS;
+            pageOrigins[i] = allocation.originX;
+            pageOrigins[i + 1] = allocation.originY;
+            pageOrigins[i + 2] = allocation.originZ;
+            final long j = (long) page * ORIGIN_INTS;
+            originScratch.setAtIndex(ValueLayout.JAVA_INT, j, allocation.originX);
+            originScratch.setAtIndex(ValueLayout.JAVA_INT, j + 1, allocation.originY);
+            originScratch.setAtIndex(ValueLayout.JAVA_INT, j + 2, allocation.originZ);
+        }
+        gl.bindBuffer(GLStateMgr.TEXTURE_BUFFER, originBuffer);
+        gl.bufferSubData(GLStateMgr.TEXTURE_BUFFER,
+            (long) allocation.firstPage * ORIGIN_INTS * Integer.BYTES,
+            originScratch.asSlice(0L, (long) ints * Integer.BYTES));
+    }
+
+    private int findFreeRun(int pages) {
+        for (Map.Entry<Integer, Integer> entry : freeRuns.entrySet()) {
+            if (entry.getValue() >= pages) {
+                return entry.getKey();
+            }
+        }
+        return -1;
+    }
+
+    private void takeRun(int firstPage, int pages) {
+        final int length = freeRuns.remove(firstPage);
+        if (length > pages) {
+            freeRuns.put(firstPage + pages, length - pages);
+        }
+    }
+
+    private void collectFrees() {
+        Allocation allocation;
+        while ((allocation = pendingFrees.poll()) != null) {
+            if (allocation.freed) {
+                continue;
+            }
+            allocation.freed = true;
+            final Allocation last = allocations.removeLast();
+            if (last != allocation) {
+                allocations.set(allocation.index, last);
+                last.index = allocation.index;
+            }
+            usedPages -= allocation.pageCount;
+            usedBytes -= allocation.byteSize;
+
+            int firstPage = allocation.firstPage;
+            int length = allocation.pageCount;
+            final Map.Entry<Integer, Integer> before = freeRuns.floorEntry(firstPage);
+            if (before != null && before.getKey() + before.getValue() == firstPage) {
+                freeRuns.remove(before.getKey());
+                firstPage = before.getKey();
+                length += before.getValue();
+            }
+            final Integer after = freeRuns.remove(firstPage + length);
+            if (after != null) {
+                length += after;
+            }
+            freeRuns.put(firstPage, length);
+        }
+    }
+
+    /**
+     * Moves all meshes to the front of the buffer, leaving a single free run at the end.
+     *
+     * @param gl the OpenGL context
+     */
+    public void defragment(GLStateMgr gl) {
+        collectFrees();
+        relocate(gl, pageCount);
+    }
+
+    private void relocate(GLStateMgr gl, int newPageCount) {
+        logger.debug("Relocating chunk vertex arena: {} -> {} pages, {} used, {} of {} used bytes wasted in page tails",
+            pageCount, newPageCount, usedPages, wastedBytes(), usedPages * pageBytes);
+        final int newVbo = gl.genBuffers();
+        gl.bindBuffer(GLStateMgr.COPY_READ_BUFFER, vbo);
+        gl.bindBuffer(GLStateMgr.COPY_WRITE_BUFFER, newVbo);
+        gl.bufferData(GLStateMgr.COPY_WRITE_BUFFER, newPageCount * pageBytes, MemorySegment.NULL, GLStateMgr.DYNAMIC_DRAW);
+
+        allocations.sort(Comparator.comparingInt(allocation -> allocation.firstPage));
+        final int[] newPageOrigins = new int[newPageCount * ORIGIN_INTS];
+        int nextPage = 0;
+        for (int i = 0, size = allocations.size(); i < size; i++) {
+            final Allocation allocation = allocations.get(i);
+            allocation.index = i;
+            gl.copyBufferSubData(GLStateMgr.COPY_READ_BUFFER, GLStateMgr.COPY_WRITE_BUFFER,
+                allocation.byteOffset(), nextPage * pageBytes, allocation.byteSize);
+            System.arraycopy(pageOrigins, allocation.firstPage * ORIGIN_INTS,
+                newPageOrigins, nextPage * ORIGIN_INTS,
+                allocation.pageCount * ORIGIN_INTS);
+            allocation.firstPage = nextPage;
+            nextPage += allocation.pageCount;
+        }
+        freeRuns.clear();
+        if (nextPage < newPageCount) {
+            freeRuns.put(nextPage, newPageCount - nextPage);
+        }
+
+        gl.deleteBuffers(vbo);
+        vbo = newVbo;
+        pageCount = newPageCount;
+        pageOrigins = newPageOrigins;
+        specifyVertexArray(gl);
+
+        try (Arena arena = Arena.ofConfined()) {
+            gl.bindBuffer(GLStateMgr.TEXTURE_BUFFER, originBuffer);
+            gl.bufferData(GLStateMgr.TEXTURE_BUFFER,
+                arena.allocateFrom(ValueLayout.JAVA_INT, newPageOrigins),
+                GLStateMgr.DYNAMIC_DRAW);
+        }
+        gl.activeTexture(GLStateMgr.TEXTURE1);
+        gl.bindTexture(GLStateMgr.TEXTURE_BUFFER, originTexture);
+        gl.texBuffer(GLStateMgr.TEXTURE_BUFFER, GLStateMgr.RGBA32I, originBuffer);
+        gl.activeTexture(GLStateMgr.TEXTURE0);
+        defragmentCount++;
+    }
+
+    /**
+     * Binds the vertex array and the page origin texture to texture unit 1.
+     *
+     * @param gl the OpenGL context
+     */
+    public void bind(GLStateMgr gl) {
+        gl.setVertexArrayBinding(vao);
+        gl.activeTexture(GLStateMgr.TEXTURE1);
+        gl.bindTexture(GLStateMgr.TEXTURE_BUFFER, originTexture);
+        gl.activeTexture(GLStateMgr.TEXTURE0);
+    }
+
+    /**
+     * {@return the capacity in pages}
+     */
+    public int pageCount() {
+        return pageCount;
+    }
+
+    /**
+     * {@return the pages taken by allocations}
+     */
+    public int usedPages() {
+        return usedPages;
+    }
+
+    /**
+     * {@return the bytes of vertex data in allocations, excluding the unused tails of their last pages}
+     */
+    public long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * {@return the bytes in the pages taken by allocations that hold no vertex data, which are the unused tails of their last pages}
+     */
+    public long wastedBytes() {
+        return usedPages * pageBytes - usedBytes;
+    }
+
+    /**
+     * {@return the capacity in bytes}
+     */
+    public long capacityBytes() {
+        return pageCount * pageBytes;
+    }
+
+    /**
+     * {@return the count of runs of free pages}
+     */
+    public int freeRunCount() {
+        return freeRuns.size();
+    }
+
+    /**
+     * {@return the longest run of free pages}
+     */
+    public int largestFreeRun() {
+        int largest = 0;
+        for (int length : freeRuns.values()) {
+            largest = Math.max(largest, length);
+        }
+        return largest;
+    }
+
+    /**
+     * {@return the count of relocations, including the growths}
+     */
+    public int defragmentCount() {
+        return defragmentCount;
+    }
+
+    public int allocationCount() {
+        return allocations.size();
+    }
+
+    public VertexLayout vertexLayout() {
+        return vertexLayout;
+    }
+
+    @Override
+    public void close(GLStateMgr gl) {
+        gl.deleteVertexArrays(vao);
+        gl.deleteBuffers(vbo);
+        gl.deleteBuffers(originBuffer);
+        gl.deleteTextures(originTexture);
+        originArena.close();
+        allocations.clear();
+        freeRuns.clear();
+    }
+}
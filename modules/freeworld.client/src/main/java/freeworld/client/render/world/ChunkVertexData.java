@@ -15,6 +15,14 @@ import freeworld.client.render.model.VertexLayout;
 import java.lang.foreign.MemorySegment;
 
 /**
+ * The vertices of a chunk mesh; the indices are those of the {@link QuadIndexBuffer}.
+ *
+ * @param vertexLayout  the vertex layout
+ * @param indexCount    the count of indices
+ * @param vertexData    the vertex data
+ * @param stagingRegion the region of the staging buffer holding the vertex data,
+ *                      or {@code null} if the vertex data is on the heap
+ * @param visibility    the {@linkplain SectionVisibility visibility} of the section
  * @author squid233
  * @since 0.1.0
  */
@@ -22,8 +30,15 @@ public record ChunkVertexData(
     VertexLayout vertexLayout,
     int indexCount,
     MemorySegment vertexData,
-    MemorySegment indexData,
-    boolean shouldReallocateVertexData,
-    boolean shouldReallocateIndexData
+    ChunkStagingBuffer.Region stagingRegion,
+    long visibility
 ) {
+    /**
+     * Releases the staging region of this data if it is not uploaded.
+     */
+    public void release() {
+        if (stagingRegion != null) {
+            stagingRegion.release();
+        }
+    }
 }
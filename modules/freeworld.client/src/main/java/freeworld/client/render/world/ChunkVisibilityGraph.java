@@ -0,0 +1,178 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.world.chunk.ClientChunk;
+import freeworld.util.ConcurrentLongMap;
+import freeworld.util.Direction;
+import freeworld.world.chunk.ChunkPos;
+import freeworld.world.chunk.ChunkRegion;
+import org.joml.FrustumIntersection;
+import org.joml.Vector3dc;
+
+import java.util.Arrays;
+
+/**
+ * Finds the sections that can be seen from the camera, walking the graph of sections from the camera section
+ * through the faces that their {@linkplain SectionVisibility visibility} connects.
+ * <p>
+ * A section entered through one face is left only through the faces that this face sees,
+ * and never in the direction opposite to a direction already taken on the way,
+ * so that the walk only goes away from the camera.
+ * Sections outside the view frustum are not entered; the {@link ChunkFrustumCuller} decides most of them by chunk.
+ * <p>
+ * This class is used on the render thread only.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkVisibilityGraph {
+    /**
+     * The chunks walked on each side of the camera chunk, which covers the chunks around the player.
+     */
+    private static final int CHUNK_SPAN = WorldRenderer.RENDER_RADIUS + 1;
+    private static final int GRID_SIZE = (CHUNK_SPAN * 2 + 1) * ClientChunk.SECTIONS_PER_AXIS;
+    private static final int GRID_HALF = GRID_SIZE / 2;
+    private static final int GRID_VOLUME = GRID_SIZE * GRID_SIZE * GRID_SIZE;
+    private static final int NO_FACE = -1;
+    private final ConcurrentLongMap<ClientChunk> chunks;
+    private final int[] visitedFrames = new int[GRID_VOLUME];
+    private final byte[] entryFaces = new byte[GRID_VOLUME];
+    private final byte[] directions = new byte[GRID_VOLUME];
+    private final int[] queue = new int[GRID_VOLUME];
+    private int frame = 0;
+    private int visitedCount = 0;
+    private long lastChunkPos = -1L;
+    private ClientChunk lastChunk = null;
+
+    public ChunkVisibilityGraph(ConcurrentLongMap<ClientChunk> chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * Adds the draws of the sections that can be seen from the camera, nearest first.
+     *
+     * @param frustum  the view frustum
+     * @param culler   the frustum culler, updated for the view frustum
+     * @param camera   the camera position
+     * @param drawList the draw list
+     * @return {@code false} if the chunk of the camera is not present, in which case nothing is added
+     */
+    public boolean collectDraws(FrustumIntersection frustum, ChunkFrustumCuller culler, Vector3dc camera, ChunkDrawList drawList) {
+        final int originX = Math.floorDiv((int) Math.floor(camera.x()), ChunkRegion.SIZE) - GRID_HALF;
+        final int originY = Math.floorDiv((int) Math.floor(camera.y()), ChunkRegion.SIZE) - GRID_HALF;
+        final int originZ = Math.floorDiv((int) Math.floor(camera.z()), ChunkRegion.SIZE) - GRID_HALF;
+        lastChunkPos = -1L;
+        lastChunk = null;
+        final int start = gridIndex(GRID_HALF, GRID_HALF, GRID_HALF);
+        if (chunkAt(originX + GRID_HALF, originY + GRID_HALF, originZ + GRID_HALF) == null) {
+            return false;
+        }
+
+        if (++frame == 0) {
+            Arrays.fill(visitedFrames, 0);
+            frame = 1;
+        }
+        visitedFrames[start] = frame;
+        entryFaces[start] = NO_FACE;
+        directions[start] = 0;
+        queue[0] = start;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            final int index = queue[head++];
+            final int gx = index % GRID_SIZE;
+            final int gz = (index / GRID_SIZE) % GRID_SIZE;
+            final int gy = index / (GRID_SIZE * GRID_SIZE);
+            final int sectionX = originX + gx;
+            final int sectionY = originY + gy;
+            final int sectionZ = originZ + gz;
+            final ClientChunk chunk = chunkAt(sectionX, sectionY, sectionZ);
+            final int section = sectionIndex(sectionX, sectionY, sectionZ);
+            chunk.collectDraw(drawList, section);
+
+            final long visibility = chunk.sectionVisibility(section);
+            final int entryFace = entryFaces[index];
+            final int taken = directions[index];
+            for (Direction direction : Direction.LIST) {
+                if ((taken & (1 << direction.oppositeId())) != 0) {
+                    continue;
+                }
+                if (entryFace != NO_FACE && !SectionVisibility.isConnected(visibility, Direction.fromId(entryFace), direction)) {
+                    continue;
+                }
+                final int nx = gx + direction.axisX();
+                final int ny = gy + direction.axisY();
+                final int nz = gz + direction.axisZ();
+                if (nx < 0 || ny < 0 || nz < 0 || nx >= GRID_SIZE || ny >= GRID_SIZE || nz >= GRID_SIZE) {
+                    continue;
+                }
+                final int neighbor = gridIndex(nx, ny, nz);
+                if (visitedFrames[neighbor] == frame) {
+                    continue;
+                }
+                final int minX = (originX + nx) * ChunkRegion.SIZE;
+                final int minY = (originY + ny) * ChunkRegion.SIZE;
+                final int minZ = (originZ + nz) * ChunkRegion.SIZE;
+                if (!culler.test(frustum,
+                    Math.floorDiv(originX + nx, ClientChunk.SECTIONS_PER_AXIS),
+                    Math.floorDiv(originY + ny, ClientChunk.SECTIONS_PER_AXIS),
+                    Math.floorDiv(originZ + nz, ClientChunk.SECTIONS_PER_AXIS),
+                    minX, minY, minZ,
+                    minX + ChunkRegion.SIZE, minY + ChunkRegion.SIZE, minZ + ChunkRegion.SIZE)) {
+                    continue;
+                }
+                if (chunkAt(originX + nx, originY + ny, originZ + nz) == null) {
+                    continue;
+                }
+                visitedFrames[neighbor] = frame;
+                entryFaces[neighbor] = (byte) direction.oppositeId();
+                directions[neighbor] = (byte) (taken | (1 << direction.id()));
+                queue[tail++] = neighbor;
+            }
+        }
+        visitedCount = tail;
+        return true;
+    }
+
+    private static int gridIndex(int x, int y, int z) {
+        return (y * GRID_SIZE + z) * GRID_SIZE + x;
+    }
+
+    private static int sectionIndex(int sectionX, int sectionY, int sectionZ) {
+        final int mask = ClientChunk.SECTIONS_PER_AXIS - 1;
+        return ClientChunk.sectionIndex(
+            (sectionX & mask) * ChunkRegion.SIZE,
+            (sectionY & mask) * ChunkRegion.SIZE,
+            (sectionZ & mask) * ChunkRegion.SIZE
+        );
+    }
+
+    private ClientChunk chunkAt(int sectionX, int sectionY, int sectionZ) {
+        final long pos = ChunkPos.pack(
+            Math.floorDiv(sectionX, ClientChunk.SECTIONS_PER_AXIS),
+            Math.floorDiv(sectionY, ClientChunk.SECTIONS_PER_AXIS),
+            Math.floorDiv(sectionZ, ClientChunk.SECTIONS_PER_AXIS)
+        );
+        if (pos != lastChunkPos) {
+            lastChunkPos = pos;
+            lastChunk = chunks.get(pos);
+        }
+        return lastChunk;
+    }
+
+    /**
+     * {@return the count of sections visited by the last walk}
+     */
+    public int visitedCount() {
+        return visitedCount;
+    }
+}
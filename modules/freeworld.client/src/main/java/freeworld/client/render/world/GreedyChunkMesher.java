@@ -0,0 +1,167 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.builder.VertexBuilder;
+import freeworld.util.Direction;
+import freeworld.world.chunk.ChunkRegion;
+
+import java.util.Arrays;
+
+/**
+ * A mesher that merges visible faces into rectangles.
+ * <p>
+ * For each direction, each slice of the section is turned into a mask of the raw IDs of the block types with a visible face;
+ * the mask is then covered by the largest rectangles of the same block type,
+ * first growing along the {@code u} axis and then along the {@code v} axis.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class GreedyChunkMesher implements ChunkMesher {
+    private static final int SIZE = ChunkRegion.SIZE;
+    private static final int SLICE_AREA = SIZE * SIZE;
+    private static final int EMPTY = -1;
+    /**
+     * The masks of all slices of a direction, holding raw IDs of block types;
+     * every entry is consumed back to {@link #EMPTY} by the merging.
+     */
+    private static final ThreadLocal<int[]> MASKS = ThreadLocal.withInitial(() -> {
+        final int[] masks = new int[SIZE * SLICE_AREA];
+        Arrays.fill(masks, EMPTY);
+        return masks;
+    });
+
+    @Override
+    public void mesh(VertexBuilder vertexBuilder, BlockRenderer blockRenderer, ChunkRegion region) {
+        final VisibleFaces faces = VisibleFaces.of(region);
+        final int count = faces.count();
+        final int[] masks = MASKS.get();
+        try {
+            for (Direction direction : Direction.LIST) {
+                final int slices = fillMasks(masks, faces, count, direction);
+                for (int slice = 0; slice < SIZE; slice++) {
+                    if ((slices & (1 << slice)) != 0) {
+                        mergeSlice(vertexBuilder, blockRenderer, masks, slice * SLICE_AREA, direction, slice);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            Arrays.fill(masks, EMPTY);
+            throw t;
+        }
+    }
+
+    /**
+     * Fills the masks of the given direction from the visible faces.
+     *
+     * @return a bit set of the slices with any visible face
+     */
+    private static int fillMasks(int[] masks, VisibleFaces faces, int count, Direction direction) {
+        int slices = 0;
+        for (int i = 0; i < count; i++) {
+            if (!faces.isVisible(i, direction)) {
+                continue;
+            }
+            final int x = faces.x(i);
+            final int y = faces.y(i);
+            final int z = faces.z(i);
+            final int slice;
+            final int u;
+            final int v;
+            if (direction.axisX() != 0) {
+                slice = x;
+                u = z;
+                v = y;
+            } else if (direction.axisY() != 0) {
+                slice = y;
+                u = x;
+                v = z;
+            } else {
+                slice = z;
+                u = x;
+                v = y;
+            }
+            masks[slice * SLICE_AREA + v * SIZE + u] = faces.rawId(i);
+            slices |= 1 << slice;
+        }
+        return slices;
+    }
+
+    private static void mergeSlice(
+        VertexBuilder vertexBuilder,
+        BlockRenderer blockRenderer,
+        int[] mask,
+        int offset,
+        Direction direction,
+        int slice
+    ) {
+        for (int v = 0; v < SIZE; v++) {
+            int u = 0;
+            while (u < SIZE) {
+                final int start = offset + v * SIZE + u;
+                final int rawId = mask[start];
+                if (rawId == EMPTY) {
+                    u++;
+                    continue;
+                }
+                int width = 1;
+                while (u + width < SIZE && mask[start + width] == rawId) {
+                    width++;
+                }
+                int height = 1;
+                grow:
+                while (v + height < SIZE) {
+                    final int row = start + height * SIZE;
+                    for (int k = 0; k < width; k++) {
+                        if (mask[row + k] != rawId) {
+                            break grow;
+                        }
+                    }
+                    height++;
+                }
+                for (int dv = 0; dv < height; dv++) {
+                    final int row = start + dv * SIZE;
+                    for (int k = 0; k < width; k++) {
+                        mask[row + k] = EMPTY;
+                    }
+                }
+                emitQuad(vertexBuilder, blockRenderer, rawId, direction, slice, u, v, width, height);
+                u += width;
+            }
+        }
+    }
+
+    private static void emitQuad(
+        VertexBuilder vertexBuilder,
+        BlockRenderer blockRenderer,
+        int rawId,
+        Direction direction,
+        int slice, int u, int v, int width, int height
+    ) {
+        if (direction.axisX() != 0) {
+            blockRenderer.renderChunkFace(vertexBuilder, rawId,
+                slice, v, u,
+                1, height, width,
+                direction);
+        } else if (direction.axisY() != 0) {
+            blockRenderer.renderChunkFace(vertexBuilder, rawId,
+                u, slice, v,
+                width, 1, height,
+                direction);
+        } else {
+            blockRenderer.renderChunkFace(vertexBuilder, rawId,
+                u, v, slice,
+                width, height, 1,
+                direction);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.builder.VertexBuilder;
+import freeworld.util.Direction;
+import freeworld.world.chunk.ChunkRegion;
+
+/**
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class NaiveChunkMesher implements ChunkMesher {
+    @Override
+    public void mesh(VertexBuilder vertexBuilder, BlockRenderer blockRenderer, ChunkRegion region) {
+        final VisibleFaces faces = VisibleFaces.of(region);
+        final int count = faces.count();
+        for (Direction direction : Direction.LIST) {
+            for (int i = 0; i < count; i++) {
+                if (faces.isVisible(i, direction)) {
+                    blockRenderer.renderChunkFace(
+                        vertexBuilder,
+                        faces.rawId(i),
+                        faces.x(i),
+                        faces.y(i),
+                        faces.z(i),
+                        1, 1, 1,
+                        direction
+                    );
+                }
+            }
+        }
+    }
+}
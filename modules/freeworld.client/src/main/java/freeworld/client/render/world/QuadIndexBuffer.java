@@ -0,0 +1,93 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.gl.GLResource;
+import freeworld.client.render.gl.GLStateMgr;
+import freeworld.util.Logging;
+import org.slf4j.Logger;
+import overrungl.opengl.GL15C;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * An element buffer holding the index pattern {@code 0, 1, 2, 2, 3, 0} of consecutive quads,
+ * shared by the vertex arrays of all chunks.
+ * <p>
+ * The buffer keeps its name when it grows, so vertex arrays that have it bound stay valid.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class QuadIndexBuffer implements GLResource {
+    private static final Logger logger = Logging.caller();
+    public static final int INDICES_PER_QUAD = 6;
+    public static final int VERTICES_PER_QUAD = 4;
+    private static final int INITIAL_QUAD_COUNT = 8192;
+    private int ebo = 0;
+    private int quadCapacity = 0;
+
+    /**
+     * {@return the count of indices to draw the given count of vertices}
+     *
+     * @param vertexCount the count of vertices, a multiple of {@value #VERTICES_PER_QUAD}
+     */
+    public static int indexCount(int vertexCount) {
+        return vertexCount / VERTICES_PER_QUAD * INDICES_PER_QUAD;
+    }
+
+    /**
+     * Binds this buffer to the element array binding of the current vertex array,
+     * growing it to hold at least the given count of quads.
+     *
+     * @param gl        the OpenGL context
+     * @param quadCount the count of quads
+     */
+    public void bind(GLStateMgr gl, int quadCount) {
+        if (ebo == 0) ebo = gl.genBuffers();
+        gl.bindBuffer(GL15C.ELEMENT_ARRAY_BUFFER, ebo);
+        if (quadCount > quadCapacity) {
+            int capacity = Math.max(quadCapacity, INITIAL_QUAD_COUNT);
+            while (capacity < quadCount) {
+                capacity = capacity * 3 / 2;
+            }
+            logger.debug("Growing quad index buffer: {} -> {} quads", quadCapacity, capacity);
+            try (Arena arena = Arena.ofConfined()) {
+                final MemorySegment segment = arena.allocate(ValueLayout.JAVA_INT, (long) capacity * INDICES_PER_QUAD);
+                for (int i = 0; i < capacity; i++) {
+                    final long index = (long) i * INDICES_PER_QUAD;
+                    final int vertex = i * VERTICES_PER_QUAD;
+                    segment.setAtIndex(ValueLayout.JAVA_INT, index, vertex);
+                    segment.setAtIndex(ValueLayout.JAVA_INT, index + 1, vertex + 1);
+                    segment.setAtIndex(ValueLayout.JAVA_INT, index + 2, vertex + 2);
+                    segment.setAtIndex(ValueLayout.JAVA_INT, index + 3, vertex + 2);
+                    segment.setAtIndex(ValueLayout.JAVA_INT, index + 4, vertex + 3);
+                    segment.setAtIndex(ValueLayout.JAVA_INT, index + 5, vertex);
+                }
+                gl.bufferData(GL15C.ELEMENT_ARRAY_BUFFER, segment, GL15C.STATIC_DRAW);
+            }
+            quadCapacity = capacity;
+        }
+    }
+
+    public int quadCapacity() {
+        return quadCapacity;
+    }
+
+    @Override
+    public void close(GLStateMgr gl) {
+        gl.deleteBuffers(ebo);
+        ebo = 0;
+        quadCapacity = 0;
+    }
+}
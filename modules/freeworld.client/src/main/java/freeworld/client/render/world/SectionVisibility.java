@@ -0,0 +1,149 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.util.Direction;
+import freeworld.world.block.BlockType;
+import freeworld.world.chunk.ChunkRegion;
+
+import java.util.Arrays;
+
+/**
+ * The connectivity between the six faces of a section through air, as a bit set of 36 bits.
+ * <p>
+ * Bit {@code from * 6 + to} is set if the face {@code from} can be seen from the face {@code to},
+ * that is, if a flood fill over air starting from a block on one face reaches a block on the other.
+ * Blocks that are not loaded count as air.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class SectionVisibility {
+    /**
+     * Every face sees every face.
+     */
+    public static final long ALL = (1L << 36) - 1;
+    /**
+     * No face sees any face.
+     */
+    public static final long NONE = 0L;
+    private static final int SIZE = ChunkRegion.SIZE;
+    private static final int BITS = Integer.numberOfTrailingZeros(SIZE);
+    private static final int MAX = SIZE - 1;
+    private static final int VOLUME = SIZE * SIZE * SIZE;
+    private static final ThreadLocal<SectionVisibility> LOCAL = ThreadLocal.withInitial(SectionVisibility::new);
+    private final long[] visited = new long[VOLUME / Long.SIZE];
+    private final int[] queue = new int[VOLUME];
+
+    private SectionVisibility() {
+    }
+
+    /**
+     * {@return {@code true} if the face {@code to} can be seen from the face {@code from} in the given visibility}
+     *
+     * @param visibility the visibility
+     * @param from       the face entered through
+     * @param to         the face left through
+     */
+    public static boolean isConnected(long visibility, Direction from, Direction to) {
+        return (visibility & (1L << (from.id() * 6 + to.id()))) != 0;
+    }
+
+    /**
+     * Computes the visibility of the given section snapshot. This method is safe to call from any thread.
+     *
+     * @param region the section snapshot
+     * @return the visibility
+     */
+    public static long compute(ChunkRegion region) {
+        return LOCAL.get().flood(region);
+    }
+
+    private long flood(ChunkRegion region) {
+        final long[] visited = this.visited;
+        final int[] queue = this.queue;
+        Arrays.fill(visited, 0L);
+        long visibility = NONE;
+        for (int start = 0; start < VOLUME; start++) {
+            if (isVisited(start) || !isOpen(region, start)) {
+                continue;
+            }
+            markVisited(start);
+            queue[0] = start;
+            int head = 0;
+            int tail = 1;
+            int faces = 0;
+            while (head < tail) {
+                final int cell = queue[head++];
+                final int x = cell & MAX;
+                final int z = (cell >>> BITS) & MAX;
+                final int y = cell >>> (BITS * 2);
+                if (x == 0) faces |= 1 << Direction.WEST.id();
+                if (x == MAX) faces |= 1 << Direction.EAST.id();
+                if (y == 0) faces |= 1 << Direction.DOWN.id();
+                if (y == MAX) faces |= 1 << Direction.UP.id();
+                if (z == 0) faces |= 1 << Direction.NORTH.id();
+                if (z == MAX) faces |= 1 << Direction.SOUTH.id();
+                if (x > 0) tail = visit(region, cell - 1, tail);
+                if (x < MAX) tail = visit(region, cell + 1, tail);
+                if (z > 0) tail = visit(region, cell - SIZE, tail);
+                if (z < MAX) tail = visit(region, cell + SIZE, tail);
+                if (y > 0) tail = visit(region, cell - SIZE * SIZE, tail);
+                if (y < MAX) tail = visit(region, cell + SIZE * SIZE, tail);
+            }
+            visibility |= connect(faces);
+            if (visibility == ALL) {
+                break;
+            }
+        }
+        return visibility;
+    }
+
+    private int visit(ChunkRegion region, int cell, int tail) {
+        if (!isVisited(cell) && isOpen(region, cell)) {
+            markVisited(cell);
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+
+    private boolean isVisited(int cell) {
+        return (visited[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private void markVisited(int cell) {
+        visited[cell >>> 6] |= 1L << cell;
+    }
+
+    private static boolean isOpen(ChunkRegion region, int cell) {
+        final BlockType blockType = region.blockAt(ChunkRegion.index(
+            cell & MAX,
+            cell >>> (BITS * 2),
+            (cell >>> BITS) & MAX
+        ));
+        return blockType == null || blockType.air();
+    }
+
+    /**
+     * {@return the visibility in which each pair of the given faces sees each other}
+     *
+     * @param faces the bit set of faces
+     */
+    private static long connect(int faces) {
+        long visibility = NONE;
+        for (int from = 0; from < 6; from++) {
+            if ((faces & (1 << from)) != 0) {
+                visibility |= (long) faces << (from * 6);
+            }
+        }
+        return visibility;
+    }
+}
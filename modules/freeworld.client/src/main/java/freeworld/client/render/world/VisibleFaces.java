@@ -0,0 +1,127 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.core.registry.BuiltinRegistries;
+import freeworld.util.Direction;
+import freeworld.world.block.BlockType;
+import freeworld.world.chunk.ChunkRegion;
+
+/**
+ * The blocks of a section snapshot that have at least one visible face.
+ * <p>
+ * The snapshot is walked once; air is skipped before any neighbour is read,
+ * and the six neighbours are read with precomputed offsets into the padded array.
+ * A face is visible if its neighbour is loaded and is air.
+ * <p>
+ * Blocks are recorded in x, y, z order, which is the order of the former per-direction sweeps,
+ * together with the raw ID of their type; the raw ID of the last looked-up type is reused for runs of the same type.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+final class VisibleFaces {
+    private static final int BITS = Integer.numberOfTrailingZeros(ChunkRegion.SIZE);
+    private static final int VOLUME = ChunkRegion.SIZE * ChunkRegion.SIZE * ChunkRegion.SIZE;
+    private static final int[] NEIGHBOR_OFFSETS = new int[Direction.LIST.size()];
+    private static final ThreadLocal<VisibleFaces> LOCAL = ThreadLocal.withInitial(VisibleFaces::new);
+    private final int[] positions = new int[VOLUME];
+    private final int[] rawIds = new int[VOLUME];
+    private final byte[] faces = new byte[VOLUME];
+    private int count;
+
+    static {
+        for (Direction direction : Direction.LIST) {
+            NEIGHBOR_OFFSETS[direction.id()] = ChunkRegion.neighborOffset(direction);
+        }
+    }
+
+    private VisibleFaces() {
+    }
+
+    /**
+     * Finds the visible faces of the given snapshot.
+     * <p>
+     * The result is owned by the calling thread and is valid until the next call on that thread.
+     *
+     * @param region the section snapshot
+     * @return the visible faces
+     */
+    static VisibleFaces of(ChunkRegion region) {
+        final VisibleFaces faces = LOCAL.get();
+        faces.cull(region);
+        return faces;
+    }
+
+    private void cull(ChunkRegion region) {
+        final int[] offsets = NEIGHBOR_OFFSETS;
+        BlockType lastBlockType = null;
+        int lastRawId = -1;
+        int n = 0;
+        for (int x = 0; x < ChunkRegion.SIZE; x++) {
+            for (int y = 0; y < ChunkRegion.SIZE; y++) {
+                int index = ChunkRegion.index(x, y, 0);
+                for (int z = 0; z < ChunkRegion.SIZE; z++, index += ChunkRegion.STRIDE_Z) {
+                    final BlockType blockType = region.blockAt(index);
+                    if (blockType == null || blockType.air()) {
+                        continue;
+                    }
+                    int mask = 0;
+                    for (int d = 0; d < offsets.length; d++) {
+                        final BlockType neighbor = region.blockAt(index + offsets[d]);
+                        if (neighbor != null && neighbor.air()) {
+                            mask |= 1 << d;
+                        }
+                    }
+                    if (mask != 0) {
+                        if (blockType != lastBlockType) {
+                            lastBlockType = blockType;
+                            lastRawId = BuiltinRegistries.BLOCK_TYPE.getRawId(blockType);
+                        }
+                        positions[n] = packPosition(x, y, z);
+                        rawIds[n] = lastRawId;
+                        faces[n] = (byte) mask;
+                        n++;
+                    }
+                }
+            }
+        }
+        count = n;
+    }
+
+    private static int packPosition(int x, int y, int z) {
+        return (x << (BITS * 2)) | (y << BITS) | z;
+    }
+
+    int count() {
+        return count;
+    }
+
+    boolean isVisible(int i, Direction direction) {
+        return (faces[i] & (1 << direction.id())) != 0;
+    }
+
+    int rawId(int i) {
+        return rawIds[i];
+    }
+
+    int x(int i) {
+        return positions[i] >>> (BITS * 2);
+    }
+
+    int y(int i) {
+        return (positions[i] >>> BITS) & (ChunkRegion.SIZE - 1);
+    }
+
+    int z(int i) {
+        return positions[i] & (ChunkRegion.SIZE - 1);
+    }
+}
@@ -10,6 +10,7 @@
 
 package freeworld.client.render.world;
 
+import freeworld.client.render.Camera;
 import freeworld.client.render.GameRenderer;
 import freeworld.client.render.RenderSystem;
 import freeworld.client.render.builder.DefaultVertexBuilder;
@@ -18,12 +19,16 @@ import freeworld.client.render.gl.GLStateMgr;
 import freeworld.client.render.model.VertexLayouts;
 import freeworld.client.world.chunk.ClientChunk;
 import freeworld.core.math.AABBox;
+import freeworld.util.ConcurrentLongMap;
 import freeworld.util.Direction;
 import freeworld.util.Logging;
+import freeworld.world.CachedBlockGetter;
 import freeworld.world.World;
 import freeworld.world.WorldListener;
 import freeworld.world.block.BlockType;
+import freeworld.world.chunk.Chunk;
 import freeworld.world.chunk.ChunkPos;
+import freeworld.world.chunk.ChunkRegion;
 import freeworld.world.entity.Entity;
 import org.joml.*;
 import org.slf4j.Logger;
@@ -39,9 +44,9 @@ import java.lang.Math;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
 /**
  * @author squid233
@@ -54,39 +59,64 @@ public final class WorldRenderer implements GLResource, WorldListener {
     public static final int RENDER_CHUNK_COUNT = RENDER_CHUNK_COUNT_CBRT * RENDER_CHUNK_COUNT_CBRT * RENDER_CHUNK_COUNT_CBRT;
     private final GameRenderer gameRenderer;
     private final World world;
+    private final CachedBlockGetter blockGetter;
     private final Scheduler scheduler = Schedulers.newParallel("WorldRenderer");
     private final Pool<DefaultVertexBuilder> vertexBuilderPool = PoolBuilder
         .from(Mono.fromSupplier(WorldRenderer::createVertexBuilder).subscribeOn(scheduler))
         .buildPool();
-    private final Map<ChunkPos, ClientChunk> chunks = new ConcurrentHashMap<>(RENDER_CHUNK_COUNT);
+    private final QuadIndexBuffer quadIndexBuffer = new QuadIndexBuffer();
+    private final ChunkCompileScheduler compileScheduler = new ChunkCompileScheduler();
+    private final ChunkStagingBuffer stagingBuffer;
+    private final ChunkVertexArena vertexArena;
+    private final ChunkDrawList drawList;
+    private final ChunkUploader chunkUploader;
+    private final DefaultVertexBuilder immediateVertexBuilder = createVertexBuilder();
+    private final ConcurrentLongMap<ClientChunk> chunks = new ConcurrentLongMap<>(RENDER_CHUNK_COUNT);
+    private final ChunkVisibilityGraph visibilityGraph = new ChunkVisibilityGraph(chunks);
     private final Disposable chunkGC;
     private final FrustumIntersection frustumIntersection = new FrustumIntersection();
+    private final ChunkFrustumCuller frustumCuller = new ChunkFrustumCuller();
     private final FrustumRayBuilder frustumRayBuilder = new FrustumRayBuilder();
     private final Vector3f frustumRayOrigin = new Vector3f();
     private final Vector3f frustumRayDir = new Vector3f();
     private final Vector2d blockIntersectionResult = new Vector2d();
+    private volatile ChunkMesher chunkMesher = ChunkMesher.GREEDY;
+    private volatile boolean occlusionCulling = true;
 
     public WorldRenderer(GameRenderer gameRenderer, World world) {
         this.gameRenderer = gameRenderer;
         this.world = world;
+        this.blockGetter = new CachedBlockGetter(world);
+        final GLStateMgr gl = gameRenderer.client().gl();
+        if (ChunkStagingBuffer.isSupported(gl)) {
+            this.stagingBuffer = new ChunkStagingBuffer(gl, ChunkStagingBuffer.DEFAULT_CAPACITY);
+        } else {
+            logger.info("Persistently mapped buffers are not supported; uploading chunks from the heap");
+            this.stagingBuffer = null;
+        }
+        this.chunkUploader = new ChunkUploader(stagingBuffer);
+        this.vertexArena = new ChunkVertexArena(gl, VertexLayouts.CHUNK);
+        this.drawList = new ChunkDrawList(gl);
+        if (!drawList.isIndirect()) {
+            logger.info("Multi-draw-indirect is not supported; drawing chunks with glMultiDrawElementsBaseVertex");
+        }
         world.addListener(this);
         this.chunkGC = Flux.interval(Duration.ofSeconds(60))
             .subscribe(_ -> {
-                final List<ChunkPos> list = new ArrayList<>(RENDER_CHUNK_COUNT);
-                World.forEachChunk(gameRenderer.client().player(), RENDER_RADIUS, (x, y, z) -> list.add(new ChunkPos(x, y, z)));
-                final var it = chunks.entrySet().iterator();
-                while (it.hasNext()) {
-                    final var e = it.next();
-                    if (!list.contains(e.getKey())) {
-                        e.getValue().close();
-                        it.remove();
+                final Set<Long> set = HashSet.newHashSet(RENDER_CHUNK_COUNT);
+                World.forEachChunk(gameRenderer.client().player(), RENDER_RADIUS, (x, y, z) -> set.add(ChunkPos.pack(x, y, z)));
+                chunks.forEach((key, chunk) -> {
+                    if (!set.contains(key)) {
+                        chunk.close();
+                        chunks.remove(key);
                     }
-                }
+                });
             });
     }
 
     private static DefaultVertexBuilder createVertexBuilder() {
-        return new DefaultVertexBuilder(VertexLayouts.POSITION_COLOR_TEX, 30000, 45000);
+        // chunk meshes emit no index; they are drawn with the quad index buffer
+        return new DefaultVertexBuilder(VertexLayouts.CHUNK, 8192, 6);
     }
 
     public List<ClientChunk> renderingChunks(Entity player) {
@@ -102,22 +132,46 @@ public final class WorldRenderer implements GLResource, WorldListener {
         for (ClientChunk chunk : renderingChunks) {
             chunk.compile();
         }
+        updateFrustum();
+        compileScheduler.dispatch(frustumIntersection, frustumCuller, gameRenderer.client().camera().lerpPosition());
     }
 
-    public void renderChunks(GLStateMgr gl, List<ClientChunk> renderingChunks) {
+    private void updateFrustum() {
+        final Camera camera = gameRenderer.client().camera();
         frustumIntersection.set(RenderSystem.projectionViewMatrix());
-        for (ClientChunk chunk : renderingChunks) {
-            if (frustumIntersection.testAab(
-                chunk.fromX(),
-                chunk.fromY(),
-                chunk.fromZ(),
-                chunk.toX(),
-                chunk.toY(),
-                chunk.toZ()
-            )) {
-                chunk.render(gl);
+        frustumCuller.update(
+            RenderSystem.projectionMatrix(),
+            RenderSystem.projectionViewMatrix(),
+            camera.lerpPosition(),
+            camera.rotation()
+        );
+    }
+
+    public void renderChunks(GLStateMgr gl, List<ClientChunk> renderingChunks) {
+        chunkUploader.upload(gl);
+        updateFrustum();
+        drawList.clear();
+        if (!occlusionCulling ||
+            !visibilityGraph.collectDraws(frustumIntersection, frustumCuller, gameRenderer.client().camera().lerpPosition(), drawList)) {
+            for (ClientChunk chunk : renderingChunks) {
+                if (frustumCuller.test(
+                    frustumIntersection,
+                    chunk.x(),
+                    chunk.y(),
+                    chunk.z(),
+                    chunk.fromX(),
+                    chunk.fromY(),
+                    chunk.fromZ(),
+                    chunk.toX(),
+                    chunk.toY(),
+                    chunk.toZ()
+                )) {
+                    chunk.collectDraws(drawList);
+                }
             }
         }
+        vertexArena.bind(gl);
+        drawList.draw(gl, quadIndexBuffer);
     }
 
     public HitResult selectBlock(Entity player) {
@@ -151,13 +205,13 @@ public final class WorldRenderer implements GLResource, WorldListener {
             final float xSquared = vx * vx;
             for (int y = y0; y <= y1; y++) {
                 for (int z = z0; z <= z1; z++) {
-                    if (!world.isBlockLoaded(x, y, z)) {
+                    if (!blockGetter.isBlockLoaded(x, y, z)) {
                         continue;
                     }
                     final float vz = z + 0.5f - oz;
                     final float zSquared = vz * vz;
                     if ((xSquared + zSquared) <= radiusSquared) {
-                        final BlockType blockType = world.getBlockType(x, y, z);
+                        final BlockType blockType = blockGetter.getBlockType(x, y, z);
                         if (blockType.air()) {
                             continue;
                         }
@@ -354,45 +408,139 @@ public final class WorldRenderer implements GLResource, WorldListener {
     public void onBlockChanged(int x, int y, int z) {
         final ClientChunk chunk = getChunkByAbsolutePos(x, y, z);
         if (chunk != null) {
-            chunk.markDirty();
+            chunk.onBlockChanged(x, y, z);
         }
+        // a neighbour section is remeshed only if the changed block lies on the face it touches
+        final int sectionX = Math.floorDiv(x, ChunkRegion.SIZE);
+        final int sectionY = Math.floorDiv(y, ChunkRegion.SIZE);
+        final int sectionZ = Math.floorDiv(z, ChunkRegion.SIZE);
         for (Direction direction : Direction.LIST) {
-            final ClientChunk chunk1 = getChunkByAbsolutePos(
-                x + direction.axisX(),
-                y + direction.axisY(),
-                z + direction.axisZ()
-            );
+            final int nx = x + direction.axisX();
+            final int ny = y + direction.axisY();
+            final int nz = z + direction.axisZ();
+            if (Math.floorDiv(nx, ChunkRegion.SIZE) == sectionX &&
+                Math.floorDiv(ny, ChunkRegion.SIZE) == sectionY &&
+                Math.floorDiv(nz, ChunkRegion.SIZE) == sectionZ) {
+                continue;
+            }
+            final ClientChunk chunk1 = getChunkByAbsolutePos(nx, ny, nz);
             if (chunk1 != null) {
-                chunk1.markDirty();
+                chunk1.markSectionDirty(nx, ny, nz);
             }
         }
     }
 
-    private ClientChunk getChunk(int x, int y, int z) {
-        return chunks.get(new ChunkPos(x, y, z));
+    @Override
+    public void onChunkLoaded(Chunk chunk) {
+        // the neighbours meshed their faces against air in place of this chunk
+        for (Direction direction : Direction.LIST) {
+            final ClientChunk neighbor = getChunk(ChunkPos.pack(
+                chunk.x() + direction.axisX(),
+                chunk.y() + direction.axisY(),
+                chunk.z() + direction.axisZ()
+            ));
+            if (neighbor != null) {
+                neighbor.markFaceDirty(direction.opposite());
+            }
+        }
+    }
+
+    @Override
+    public void onChunkUnloaded(Chunk chunk) {
+        // the mesh would be stale if the chunk is loaded again
+        final ClientChunk clientChunk = chunks.remove(ChunkPos.pack(chunk.x(), chunk.y(), chunk.z()));
+        if (clientChunk != null) {
+            clientChunk.close();
+        }
+    }
+
+    private ClientChunk getChunk(long packedPos) {
+        return chunks.get(packedPos);
     }
 
     private ClientChunk getChunkOrCreate(int x, int y, int z) {
-        return chunks.computeIfAbsent(new ChunkPos(x, y, z),
-            chunkPos -> new ClientChunk(world, this, chunkPos.x(), chunkPos.y(), chunkPos.z()));
+        return chunks.computeIfAbsent(ChunkPos.pack(x, y, z),
+            _ -> new ClientChunk(world, this, x, y, z));
     }
 
     private ClientChunk getChunkByAbsolutePos(int x, int y, int z) {
-        return getChunk(
-            ChunkPos.absoluteToChunk(x),
-            ChunkPos.absoluteToChunk(y),
-            ChunkPos.absoluteToChunk(z)
-        );
+        return getChunk(ChunkPos.packAbsolute(x, y, z));
     }
 
     public Pool<DefaultVertexBuilder> vertexBuilderPool() {
         return vertexBuilderPool;
     }
 
+    /**
+     * {@return the vertex builder for meshing on the render thread}
+     */
+    public DefaultVertexBuilder immediateVertexBuilder() {
+        return immediateVertexBuilder;
+    }
+
     public Scheduler scheduler() {
         return scheduler;
     }
 
+    public ChunkCompileScheduler compileScheduler() {
+        return compileScheduler;
+    }
+
+    public ChunkUploader chunkUploader() {
+        return chunkUploader;
+    }
+
+    public ChunkVertexArena vertexArena() {
+        return vertexArena;
+    }
+
+    /**
+     * {@return the staging buffer that compile workers write chunk meshes into, or {@code null} if it is not supported}
+     */
+    public ChunkStagingBuffer stagingBuffer() {
+        return stagingBuffer;
+    }
+
+    public ChunkMesher chunkMesher() {
+        return chunkMesher;
+    }
+
+    /**
+     * Sets the mesher used by chunks compiled after this call.
+     *
+     * @param chunkMesher the mesher
+     */
+    public void setChunkMesher(ChunkMesher chunkMesher) {
+        this.chunkMesher = chunkMesher;
+    }
+
+    public boolean occlusionCulling() {
+        return occlusionCulling;
+    }
+
+    /**
+     * Sets whether only the sections that can be seen from the camera through air are drawn.
+     * When disabled, or when the chunk of the camera is not present, every chunk in the view frustum is drawn.
+     *
+     * @param occlusionCulling {@code true} to enable occlusion culling
+     * @see ChunkVisibilityGraph
+     */
+    public void setOcclusionCulling(boolean occlusionCulling) {
+        this.occlusionCulling = occlusionCulling;
+    }
+
+    public ChunkVisibilityGraph visibilityGraph() {
+        return visibilityGraph;
+    }
+
+    public ChunkFrustumCuller frustumCuller() {
+        return frustumCuller;
+    }
+
+    public QuadIndexBuffer quadIndexBuffer() {
+        return quadIndexBuffer;
+    }
+
     public GameRenderer gameRenderer() {
         return gameRenderer;
     }
@@ -400,12 +548,18 @@ public final class WorldRenderer implements GLResource, WorldListener {
     @Override
     public void close(GLStateMgr gl) {
         logger.info("Closing world renderer");
+        compileScheduler.clear();
+        chunkUploader.clear();
         scheduler.dispose();
         vertexBuilderPool.dispose();
         chunkGC.dispose();
-        for (ClientChunk chunk : chunks.values()) {
-            chunk.close();
-        }
+        chunks.forEach((_, chunk) -> chunk.close());
         chunks.clear();
+        quadIndexBuffer.close(gl);
+        vertexArena.close(gl);
+        drawList.close(gl);
+        if (stagingBuffer != null) {
+            stagingBuffer.close(gl);
+        }
     }
 }
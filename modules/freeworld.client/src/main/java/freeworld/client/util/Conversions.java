@@ -51,4 +51,10 @@ public final class Conversions {
     public static int colorToInt(float color) {
         return Math.round(color * 255f);
     }
+
+    // normalized integer
+
+    public static short floatToUnorm16(float value) {
+        return (short) Math.round(value * 65535f);
+    }
 }
@@ -11,132 +11,387 @@
 package freeworld.client.world.chunk;
 
 import freeworld.client.render.gl.GLStateMgr;
-import freeworld.client.render.model.VertexLayout;
+import freeworld.client.render.world.ChunkCompileScheduler;
 import freeworld.client.render.world.ChunkCompiler;
+import freeworld.client.render.world.ChunkDrawList;
+import freeworld.client.render.world.ChunkUploader;
+import freeworld.client.render.world.ChunkVertexArena;
 import freeworld.client.render.world.ChunkVertexData;
+import freeworld.client.render.world.SectionVisibility;
 import freeworld.client.render.world.WorldRenderer;
+import freeworld.util.Direction;
 import freeworld.util.Logging;
 import freeworld.world.World;
 import freeworld.world.chunk.Chunk;
+import freeworld.world.chunk.ChunkPos;
+import freeworld.world.chunk.ChunkRegion;
 import freeworld.world.entity.Entity;
 import freeworld.world.entity.component.PositionComponent;
 import org.joml.Vector3d;
 import org.slf4j.Logger;
-import overrungl.opengl.GL15C;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.pool.PoolShutdownException;
 
-import java.lang.foreign.MemorySegment;
 import java.lang.ref.Cleaner;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
+ * The renderer of a chunk, as {@link #SECTION_COUNT} independently meshed sections.
+ * <p>
+ * The blocks are not copied: sections are meshed from snapshots {@linkplain ChunkRegion#capture captured} from the world,
+ * and the uniformity of the chunk is read from the chunk of the world.
+ * A block change remeshes only the sections whose mesh can change;
+ * those sections are meshed on the render thread so that the change shows up in the next frame.
+ * Other sections are queued to the {@linkplain WorldRenderer#compileScheduler() compile scheduler},
+ * and the meshing of a section is cancelled when it is dirtied again or this chunk is closed;
+ * their meshes are uploaded by the {@linkplain WorldRenderer#chunkUploader() chunk uploader}.
+ *
  * @author squid233
  * @since 0.1.0
  */
-public final class ClientChunk extends Chunk implements AutoCloseable {
+public final class ClientChunk implements AutoCloseable {
     private static final Logger logger = Logging.caller();
     private static final Cleaner CLEANER = Cleaner.create();
+    public static final int SECTIONS_PER_AXIS = Chunk.SIZE / ChunkRegion.SIZE;
+    public static final int SECTION_COUNT = SECTIONS_PER_AXIS * SECTIONS_PER_AXIS * SECTIONS_PER_AXIS;
+    private static final int ALL_SECTIONS = (1 << SECTION_COUNT) - 1;
     private final Cleaner.Cleanable cleanable;
+    private final World world;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final WorldRenderer worldRenderer;
+    private final GLStateMgr gl;
     private final State state;
-    private final Flux<ChunkVertexData> dataFlux;
     /**
-     * Is this chunk changed?
+     * Does this chunk need to mesh all sections?
      */
     private boolean dirty = true;
-    private int indexCount = 0;
+    /**
+     * Bit set of the sections to remesh in the background.
+     */
+    private int dirtySections = 0;
+    /**
+     * Bit set of the sections to remesh on the render thread.
+     */
+    private int urgentSections = 0;
+    /**
+     * Bit set of the sections queued to the compile scheduler.
+     */
+    private int queuedSections = 0;
+    private final int[] indexCounts = new int[SECTION_COUNT];
+    /**
+     * Incremented on each remesh of a section; meshes of an older generation are dropped.
+     */
+    private final int[] generations = new int[SECTION_COUNT];
+    /**
+     * The {@linkplain SectionVisibility visibility} of each section; sections not yet meshed see through all faces.
+     */
+    private final long[] visibilities = new long[SECTION_COUNT];
+    private final AtomicReferenceArray<Disposable> compilations = new AtomicReferenceArray<>(SECTION_COUNT);
+    private volatile boolean closed = false;
 
     public ClientChunk(World world, WorldRenderer worldRenderer, int x, int y, int z) {
-        super(world, x, y, z);
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.worldRenderer = worldRenderer;
         // Get OpenGL context directly
-        this.state = new State(worldRenderer.gameRenderer().client().gl());
+        this.gl = worldRenderer.gameRenderer().client().gl();
+        this.state = new State();
+        Arrays.fill(visibilities, SectionVisibility.ALL);
         this.cleanable = CLEANER.register(this, state);
-        this.dataFlux = worldRenderer.vertexBuilderPool()
-            .withPoolable(vertexBuilder -> Mono.fromSupplier(() -> ChunkCompiler.compile(
-                    vertexBuilder,
-                    worldRenderer.gameRenderer().blockRenderer(),
-                    this
-                ))
-            )
-            .onBackpressureBuffer()
-            .subscribeOn(worldRenderer.scheduler());
     }
 
     private static final class State implements Runnable {
-        private final GLStateMgr gl;
-        private int vao = 0;
-        private int vbo = 0;
-        private int ebo = 0;
-        private final AtomicReference<ChunkVertexData> dataRef = new AtomicReference<>();
-
-        private State(GLStateMgr gl) {
-            this.gl = gl;
-        }
+        private final ChunkVertexArena.Allocation[] allocations = new ChunkVertexArena.Allocation[SECTION_COUNT];
 
         @Override
         public void run() {
-            gl.deleteVertexArrays(vao);
-            gl.deleteBuffers(vbo, ebo);
-            dataRef.set(null);
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                freeAllocation(i);
+            }
         }
+
+        private void freeAllocation(int index) {
+            final ChunkVertexArena.Allocation allocation = allocations[index];
+            if (allocation != null) {
+                allocation.free();
+                allocations[index] = null;
+            }
+        }
+    }
+
+    /**
+     * {@return the index of the section containing the given relative position}
+     */
+    public static int sectionIndex(int x, int y, int z) {
+        return ((y / ChunkRegion.SIZE) * SECTIONS_PER_AXIS + (z / ChunkRegion.SIZE)) * SECTIONS_PER_AXIS + (x / ChunkRegion.SIZE);
+    }
+
+    private static int sectionX(int index) {
+        return index % SECTIONS_PER_AXIS;
+    }
+
+    private static int sectionY(int index) {
+        return index / (SECTIONS_PER_AXIS * SECTIONS_PER_AXIS);
+    }
+
+    private static int sectionZ(int index) {
+        return (index / SECTIONS_PER_AXIS) % SECTIONS_PER_AXIS;
     }
 
     public void compile() {
-        if (!dirty) {
+        final Chunk chunk = world().getChunk(x(), y(), z());
+        if (chunk == null) {
+            // stays dirty until the chunk is loaded
+            world().requestChunk(x(), y(), z());
+            return;
+        }
+        if (dirty) {
+            dirty = false;
+            dirtySections = ALL_SECTIONS;
+        }
+        if ((dirtySections | urgentSections) == 0) {
             return;
         }
-        final Chunk chunk = world().getOrCreateChunk(x(), y(), z());
-        if (chunk != null) {
-            copyFrom(chunk);
+        if (ChunkCompiler.hasNoVisibleFace(chunk)) {
+            final long visibility = chunk.uniformBlockType().air() ? SectionVisibility.ALL : SectionVisibility.NONE;
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                invalidate(i);
+                indexCounts[i] = 0;
+                visibilities[i] = visibility;
+                state.freeAllocation(i);
+            }
+            dirtySections = 0;
+            urgentSections = 0;
+            queuedSections = 0;
+            return;
         }
-        dataFlux.subscribe(state.dataRef::set, throwable -> {
-            if (!(throwable instanceof PoolShutdownException)) {
-                logger.error(STR."Error thrown compiling client chunk \{x()}, \{y()}, \{z()}", throwable);
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            final int bit = 1 << i;
+            if ((urgentSections & bit) != 0) {
+                invalidate(i);
+                queuedSections &= ~bit;
+                final ChunkVertexData data = ChunkCompiler.compile(
+                    worldRenderer.immediateVertexBuilder(),
+                    worldRenderer.gameRenderer().blockRenderer(),
+                    worldRenderer.chunkMesher(),
+                    captureSection(i),
+                    null
+                );
+                uploadSection(gl, i, data);
+            } else if ((dirtySections & bit) != 0) {
+                invalidate(i);
+                if ((queuedSections & bit) == 0) {
+                    queuedSections |= bit;
+                    worldRenderer.compileScheduler().enqueue(this, i);
+                }
             }
-        });
-        dirty = false;
+        }
+        dirtySections = 0;
+        urgentSections = 0;
     }
 
-    public void render(GLStateMgr gl) {
-        final ChunkVertexData data = state.dataRef.get();
-        if (data != null) {
-            buildBuffer(gl, data);
-            state.dataRef.set(null);
+    /**
+     * Cancels the meshing of the given section, and outdates its mesh waiting for upload.
+     */
+    private void invalidate(int index) {
+        final Disposable compilation = compilations.getAndSet(index, null);
+        if (compilation != null) {
+            compilation.dispose();
         }
-        if (state.vao != 0) {
-            gl.setVertexArrayBinding(state.vao);
-            gl.drawElements(GLStateMgr.TRIANGLES, indexCount, GLStateMgr.UNSIGNED_INT, MemorySegment.NULL);
+        generations[index]++;
+    }
+
+    /**
+     * Starts meshing the given queued section in the background.
+     * Called by the {@link ChunkCompileScheduler}.
+     *
+     * @param index       the index of the section
+     * @param onTerminate called when the meshing completes, fails or is cancelled, if it was started
+     * @return {@code false} if the section is no longer queued or this chunk is closed
+     */
+    public boolean startCompile(int index, Runnable onTerminate) {
+        final int bit = 1 << index;
+        if (closed || (queuedSections & bit) == 0) {
+            return false;
         }
+        queuedSections &= ~bit;
+        final int generation = generations[index];
+        // capture the snapshot on this thread; the compiler reads nothing else from the world
+        compilations.set(index, compileFlux(captureSection(index))
+            .doFinally(_ -> onTerminate.run())
+            .subscribe(
+                data -> {
+                    if (closed) {
+                        data.release();
+                    } else {
+                        worldRenderer.chunkUploader().submit(this, index, generation, data);
+                    }
+                },
+                throwable -> {
+                    if (!(throwable instanceof PoolShutdownException)) {
+                        logger.error(STR."Error thrown compiling client chunk \{x()}, \{y()}, \{z()} section \{index}", throwable);
+                    }
+                }));
+        return true;
     }
 
-    private void buildBuffer(GLStateMgr gl, ChunkVertexData data) {
-        indexCount = data.indexCount();
+    private ChunkRegion captureSection(int index) {
+        return ChunkRegion.capture(world(),
+            x() * SECTIONS_PER_AXIS + sectionX(index),
+            y() * SECTIONS_PER_AXIS + sectionY(index),
+            z() * SECTIONS_PER_AXIS + sectionZ(index));
+    }
+
+    public int sectionOriginX(int index) {
+        return fromX() + sectionX(index) * ChunkRegion.SIZE;
+    }
+
+    public int sectionOriginY(int index) {
+        return fromY() + sectionY(index) * ChunkRegion.SIZE;
+    }
 
-        final MemorySegment vertexData = data.vertexData();
-        final MemorySegment indexData = data.indexData();
+    public int sectionOriginZ(int index) {
+        return fromZ() + sectionZ(index) * ChunkRegion.SIZE;
+    }
 
-        if (state.vao == 0) state.vao = gl.genVertexArrays();
-        if (state.vbo == 0) state.vbo = gl.genBuffers();
-        if (state.ebo == 0) state.ebo = gl.genBuffers();
-        gl.setVertexArrayBinding(state.vao);
-        gl.setArrayBufferBinding(state.vbo);
-        if (data.shouldReallocateVertexData()) {
-            gl.bufferData(GL15C.ARRAY_BUFFER, vertexData, GL15C.DYNAMIC_DRAW);
-            final VertexLayout layout = data.vertexLayout();
-            layout.enableAttribs(gl);
-            layout.specifyAttribPointers(gl);
-        } else {
-            gl.bufferSubData(GL15C.ARRAY_BUFFER, 0L, vertexData);
+    private Flux<ChunkVertexData> compileFlux(ChunkRegion region) {
+        return worldRenderer.vertexBuilderPool()
+            .withPoolable(vertexBuilder -> Mono.fromSupplier(() -> ChunkCompiler.compile(
+                    vertexBuilder,
+                    worldRenderer.gameRenderer().blockRenderer(),
+                    worldRenderer.chunkMesher(),
+                    region,
+                    worldRenderer.stagingBuffer()
+                ))
+            )
+            .onBackpressureBuffer()
+            .subscribeOn(worldRenderer.scheduler())
+            // a mesh dropped by a cancelled compile must give back its staging region
+            .doOnDiscard(ChunkVertexData.class, ChunkVertexData::release);
+    }
+
+    /**
+     * Adds the draw of the given section if it is not empty.
+     *
+     * @param drawList the draw list
+     * @param index    the index of the section
+     */
+    public void collectDraw(ChunkDrawList drawList, int index) {
+        final ChunkVertexArena.Allocation allocation = state.allocations[index];
+        if (allocation != null) {
+            drawList.add(indexCounts[index], allocation.baseVertex());
+        }
+    }
+
+    /**
+     * {@return the visibility of the given section}
+     *
+     * @param index the index of the section
+     * @see SectionVisibility
+     */
+    public long sectionVisibility(int index) {
+        return visibilities[index];
+    }
+
+    /**
+     * Adds the draws of the non-empty sections of this chunk.
+     *
+     * @param drawList the draw list
+     */
+    public void collectDraws(ChunkDrawList drawList) {
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            collectDraw(drawList, i);
+        }
+    }
+
+    /**
+     * {@return {@code true} if a mesh of the given section compiled at the given generation is still up to date}
+     *
+     * @param index      the index of the section
+     * @param generation the generation of the section when the mesh was compiled
+     */
+    public boolean acceptsMesh(int index, int generation) {
+        return !closed && generations[index] == generation;
+    }
+
+    /**
+     * Uploads the mesh of the given section. Called by the {@link ChunkUploader}.
+     *
+     * @param gl    the OpenGL context
+     * @param index the index of the section
+     * @param data  the vertex data
+     */
+    public void uploadSection(GLStateMgr gl, int index, ChunkVertexData data) {
+        state.freeAllocation(index);
+        indexCounts[index] = data.indexCount();
+        visibilities[index] = data.visibility();
+        if (data.indexCount() == 0) {
+            return;
         }
-        gl.bindBuffer(GL15C.ELEMENT_ARRAY_BUFFER, state.ebo);
-        if (data.shouldReallocateIndexData()) {
-            gl.bufferData(GL15C.ELEMENT_ARRAY_BUFFER, indexData, GL15C.DYNAMIC_DRAW);
-        } else {
-            gl.bufferSubData(GL15C.ELEMENT_ARRAY_BUFFER, 0L, indexData);
+        state.allocations[index] = worldRenderer.vertexArena().upload(gl, data,
+            sectionOriginX(index),
+            sectionOriginY(index),
+            sectionOriginZ(index));
+    }
+
+    /**
+     * Schedules the section containing the given changed block to be remeshed on the render thread.
+     *
+     * @param x the absolute x
+     * @param y the absolute y
+     * @param z the absolute z
+     */
+    public void onBlockChanged(int x, int y, int z) {
+        if (dirty) {
+            // all sections will be meshed anyway
+            return;
+        }
+        markSectionDirty(x, y, z);
+    }
+
+    /**
+     * Schedules the section containing the given absolute position to be remeshed on the render thread,
+     * without copying any block.
+     *
+     * @param x the absolute x
+     * @param y the absolute y
+     * @param z the absolute z
+     */
+    public void markSectionDirty(int x, int y, int z) {
+        urgentSections |= 1 << sectionIndex(
+            ChunkPos.absoluteToRelative(x),
+            ChunkPos.absoluteToRelative(y),
+            ChunkPos.absoluteToRelative(z)
+        );
+    }
+
+    /**
+     * Schedules the sections on the given face of this chunk to be remeshed in the background,
+     * without copying any block.
+     *
+     * @param face the face
+     */
+    public void markFaceDirty(Direction face) {
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            if (isOnFace(face.axisX(), sectionX(i)) &&
+                isOnFace(face.axisY(), sectionY(i)) &&
+                isOnFace(face.axisZ(), sectionZ(i))) {
+                dirtySections |= 1 << i;
+            }
         }
     }
 
+    private static boolean isOnFace(int axis, int section) {
+        return axis == 0 || section == (axis > 0 ? SECTIONS_PER_AXIS - 1 : 0);
+    }
+
     public double xzDistanceToPlayerSquared(Entity player) {
         if (!player.hasComponent(PositionComponent.ID)) {
             return 0.0;
@@ -153,14 +408,59 @@ public final class ClientChunk extends Chunk implements AutoCloseable {
         return Math.abs(value.y() - y());
     }
 
-    @Override
-    public void markDirty() {
-        super.markDirty();
-        dirty = true;
+    public World world() {
+        return world;
+    }
+
+    public int x() {
+        return x;
+    }
+
+    public int y() {
+        return y;
+    }
+
+    public int z() {
+        return z;
+    }
+
+    public int fromX() {
+        return x * Chunk.SIZE;
+    }
+
+    public int fromY() {
+        return y * Chunk.SIZE;
+    }
+
+    public int fromZ() {
+        return z * Chunk.SIZE;
+    }
+
+    public int toX() {
+        return fromX() + Chunk.SIZE;
+    }
+
+    public int toY() {
+        return fromY() + Chunk.SIZE;
+    }
+
+    public int toZ() {
+        return fromZ() + Chunk.SIZE;
+    }
+
+    public boolean isClosed() {
+        return closed;
     }
 
     @Override
     public void close() {
+        closed = true;
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            final Disposable compilation = compilations.getAndSet(i, null);
+            if (compilation != null) {
+                compilation.dispose();
+            }
+        }
         cleanable.clean();
     }
 }
@@ -0,0 +1,17 @@
+#version 330
+
+in vec4 vertexColor;
+in vec2 texCoord;
+flat in vec4 uvRegion;
+
+out vec4 FragColor;
+
+uniform vec4 ColorModulator;
+uniform sampler2D Sampler0;
+
+void main() {
+    // texCoord counts whole blocks; wrap it into the atlas region so that merged faces repeat the texture
+    vec2 atlasCoord = texCoord * uvRegion.zw;
+    vec2 uv = uvRegion.xy + fract(texCoord) * uvRegion.zw;
+    FragColor = ColorModulator * vertexColor * textureGrad(Sampler0, uv, dFdx(atlasCoord), dFdy(atlasCoord));
+}
@@ -0,0 +1,28 @@
+#version 330
+
+in vec4 ChunkPosition;
+in vec2 ChunkUV;
+in vec4 ChunkUVRegion;
+
+out vec4 vertexColor;
+out vec2 texCoord;
+flat out vec4 uvRegion;
+
+uniform mat4 ProjectionViewMatrix;
+uniform mat4 ModelMatrix;
+// the origin of the section owning each page of the chunk vertex arena
+uniform isamplerBuffer PageOrigins;
+
+// PAGE_VERTICES is defined from ChunkVertexArena.PAGE_VERTICES when this shader is compiled
+
+// indexed by direction: west, east, down, up, north, south
+const float FACE_SHADES[6] = float[](0.6, 0.6, 0.5, 1.0, 0.8, 0.8);
+
+void main() {
+    vec3 origin = vec3(texelFetch(PageOrigins, gl_VertexID / PAGE_VERTICES).xyz);
+    gl_Position = ProjectionViewMatrix * ModelMatrix * vec4(origin + ChunkPosition.xyz, 1.0);
+    float shade = FACE_SHADES[int(ChunkPosition.w)];
+    vertexColor = vec4(shade, shade, shade, 1.0);
+    texCoord = ChunkUV;
+    uvRegion = ChunkUVRegion;
+}
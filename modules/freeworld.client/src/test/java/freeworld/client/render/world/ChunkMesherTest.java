@@ -0,0 +1,344 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.client.render.world;
+
+import freeworld.client.render.builder.VertexBuilder;
+import freeworld.client.render.model.VertexLayout;
+import freeworld.client.render.model.block.BlockModelManager;
+import freeworld.client.render.texture.TextureRegion;
+import freeworld.core.Identifier;
+import freeworld.core.registry.BuiltinRegistries;
+import freeworld.util.Direction;
+import freeworld.world.block.BlockType;
+import freeworld.world.block.BlockTypes;
+import freeworld.world.chunk.ChunkRegion;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the {@linkplain ChunkMesher#GREEDY greedy} and the {@linkplain ChunkMesher#NAIVE naive} meshers on the CPU.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+class ChunkMesherTest {
+    private static final int SIZE = ChunkRegion.SIZE;
+    private static final int TEXTURE_SIZE = 16;
+    private static final int ATLAS_SIZE = TEXTURE_SIZE * 16;
+    private static BlockRenderer blockRenderer;
+
+    /**
+     * A unit face of a block, with the texture region it is drawn with.
+     */
+    private record Face(Direction direction, int x, int y, int z, float u0, float v0) {
+    }
+
+    @BeforeAll
+    static void setUp() {
+        BlockTypes.bootstrap();
+        BuiltinRegistries.BLOCK_TYPE.freeze();
+        final Map<Identifier, TextureRegion> regions = new HashMap<>();
+        final BlockModelManager manager = new BlockModelManager();
+        manager.bake(BuiltinRegistries.BLOCK_TYPE,
+            id -> regions.computeIfAbsent(id, _ -> new TextureRegion(regions.size() * TEXTURE_SIZE, 0, TEXTURE_SIZE, TEXTURE_SIZE)),
+            ATLAS_SIZE,
+            ATLAS_SIZE);
+        blockRenderer = new BlockRenderer(manager);
+    }
+
+    @Test
+    void solidCube() {
+        final ChunkRegion region = region((_, _, _) -> BlockTypes.STONE);
+        final int[] counts = compare(region);
+        // one quad per side of the section
+        assertEquals(6 * 4, counts[0]);
+        assertEquals(6 * SIZE * SIZE * 4, counts[1]);
+    }
+
+    @Test
+    void checkerboard() {
+        compare(region((x, y, z) -> ((x + y + z) & 1) == 0 ? BlockTypes.STONE : BlockTypes.AIR));
+    }
+
+    @Test
+    void mixedBlockTypes() {
+        final BlockType[] types = {BlockTypes.STONE, BlockTypes.DIRT, BlockTypes.GRASS_BLOCK};
+        final int[] layered = compare(region((_, y, _) -> types[y / 3 % types.length]));
+        assertTrue(layered[0] < layered[1]);
+        final Random random = new Random(42L);
+        compare(region((_, _, _) -> random.nextInt(4) == 0 ? BlockTypes.AIR : types[random.nextInt(types.length)]));
+    }
+
+    @Test
+    void terrain() {
+        compare(region((x, y, z) -> {
+            final int height = 6 + (x * 3 + z * 5) % 7;
+            if (y > height) {
+                return BlockTypes.AIR;
+            }
+            return y == height ? BlockTypes.GRASS_BLOCK : (y > height - 3 ? BlockTypes.DIRT : BlockTypes.STONE);
+        }));
+    }
+
+    /**
+     * Meshes the given region with both meshers and checks that they cover exactly the visible faces.
+     *
+     * @return the vertex counts of the greedy and the naive meshers
+     */
+    private static int[] compare(ChunkRegion region) {
+        final Set<Face> expected = visibleFaces(region);
+        final RecordingVertexBuilder greedy = new RecordingVertexBuilder();
+        ChunkMesher.GREEDY.mesh(greedy, blockRenderer, region);
+        final RecordingVertexBuilder naive = new RecordingVertexBuilder();
+        ChunkMesher.NAIVE.mesh(naive, blockRenderer, region);
+
+        assertEquals(expected, naive.faces, "naive faces");
+        assertEquals(expected, greedy.faces, "greedy faces");
+        assertEquals(0, greedy.overlaps, "greedy overlapping faces");
+        assertTrue(greedy.vertexCount() <= naive.vertexCount(),
+            STR."greedy emitted \{greedy.vertexCount()} vertices, naive \{naive.vertexCount()}");
+        return new int[]{greedy.vertexCount(), naive.vertexCount()};
+    }
+
+    @FunctionalInterface
+    private interface BlockFunction {
+        BlockType get(int x, int y, int z);
+    }
+
+    /**
+     * Creates a section of the given blocks, with a halo of air.
+     */
+    private static ChunkRegion region(BlockFunction function) {
+        final BlockType[] blocks = new BlockType[ChunkRegion.PADDED_SIZE * ChunkRegion.PADDED_SIZE * ChunkRegion.PADDED_SIZE];
+        for (int y = -1; y <= SIZE; y++) {
+            for (int z = -1; z <= SIZE; z++) {
+                for (int x = -1; x <= SIZE; x++) {
+                    final boolean inside = x >= 0 && y >= 0 && z >= 0 && x < SIZE && y < SIZE && z < SIZE;
+                    blocks[ChunkRegion.index(x, y, z)] = inside ? function.get(x, y, z) : BlockTypes.AIR;
+                }
+            }
+        }
+        return ChunkRegion.of(0, 0, 0, blocks);
+    }
+
+    private static Set<Face> visibleFaces(ChunkRegion region) {
+        final Set<Face> faces = new HashSet<>();
+        for (int y = 0; y < SIZE; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                for (int x = 0; x < SIZE; x++) {
+                    final BlockType blockType = region.getBlockType(x, y, z);
+                    if (blockType.air()) {
+                        continue;
+                    }
+                    final int rawId = BuiltinRegistries.BLOCK_TYPE.getRawId(blockType);
+                    for (Direction direction : Direction.LIST) {
+                        if (region.getBlockType(x + direction.axisX(), y + direction.axisY(), z + direction.axisZ()).air()) {
+                            final float[] origin = textureOrigin(rawId, direction);
+                            faces.add(new Face(direction, x, y, z, origin[0], origin[1]));
+                        }
+                    }
+                }
+            }
+        }
+        return faces;
+    }
+
+    /**
+     * {@return the texture origin of the given face of the given block type}
+     */
+    private static float[] textureOrigin(int rawId, Direction direction) {
+        final RecordingVertexBuilder builder = new RecordingVertexBuilder();
+        blockRenderer.renderChunkFace(builder, rawId, 0, 0, 0, 1, 1, 1, direction);
+        return new float[]{builder.u0, builder.v0};
+    }
+
+    /**
+     * Splits the emitted quads into unit faces.
+     */
+    private static final class RecordingVertexBuilder implements VertexBuilder {
+        private final Set<Face> faces = new HashSet<>();
+        private final float[] positions = new float[4 * 3];
+        private int overlaps = 0;
+        private int vertexCount = 0;
+        private int quadVertex = 0;
+        private float x;
+        private float y;
+        private float z;
+        private float u0;
+        private float v0;
+        private int normalIndex;
+
+        @Override
+        public VertexBuilder position(float x, float y, float z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            return this;
+        }
+
+        @Override
+        public VertexBuilder texCoord(float u, float v) {
+            return this;
+        }
+
+        @Override
+        public VertexBuilder uvRegion(float u, float v, float width, float height) {
+            u0 = u;
+            v0 = v;
+            return this;
+        }
+
+        @Override
+        public VertexBuilder normalIndex(int index) {
+            normalIndex = index;
+            return this;
+        }
+
+        @Override
+        public void emit() {
+            positions[quadVertex * 3] = x;
+            positions[quadVertex * 3 + 1] = y;
+            positions[quadVertex * 3 + 2] = z;
+            vertexCount++;
+            if (++quadVertex == 4) {
+                quadVertex = 0;
+                addQuad();
+            }
+        }
+
+        private void addQuad() {
+            final int[] min = new int[3];
+            final int[] max = new int[3];
+            for (int axis = 0; axis < 3; axis++) {
+                float lo = Float.POSITIVE_INFINITY;
+                float hi = Float.NEGATIVE_INFINITY;
+                for (int i = 0; i < 4; i++) {
+                    lo = Math.min(lo, positions[i * 3 + axis]);
+                    hi = Math.max(hi, positions[i * 3 + axis]);
+                }
+                min[axis] = Math.round(lo);
+                max[axis] = Math.round(hi);
+            }
+            final Direction direction = Direction.fromId(normalIndex);
+            final int[] normal = {direction.axisX(), direction.axisY(), direction.axisZ()};
+            for (int axis = 0; axis < 3; axis++) {
+                if (normal[axis] != 0) {
+                    assertEquals(min[axis], max[axis], "quad is not flat on its normal axis");
+                    // the face of the block on the positive side lies on its far plane
+                    final int block = normal[axis] > 0 ? min[axis] - 1 : min[axis];
+                    min[axis] = block;
+                    max[axis] = block + 1;
+                }
+            }
+            for (int bx = min[0]; bx < max[0]; bx++) {
+                for (int by = min[1]; by < max[1]; by++) {
+                    for (int bz = min[2]; bz < max[2]; bz++) {
+                        if (!faces.add(new Face(direction, bx, by, bz, u0, v0))) {
+                            overlaps++;
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int vertexCount() {
+            return vertexCount;
+        }
+
+        @Override
+        public void reset() {
+            faces.clear();
+            overlaps = 0;
+            vertexCount = 0;
+            quadVertex = 0;
+        }
+
+        @Override
+        public VertexBuilder indicesWithOffset(int offset, int... indices) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public VertexBuilder indices(int... indices) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public VertexBuilder indices6(int i0, int i1, int i2, int i3, int i4, int i5) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public VertexBuilder indicesWithOffset(int offset, MemorySegment indices) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public VertexBuilder indices(MemorySegment indices) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public VertexBuilder quad() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public VertexBuilder color(int red, int green, int blue, int alpha) {
+            return this;
+        }
+
+        @Override
+        public int indexCount() {
+            return 0;
+        }
+
+        @Override
+        public MemorySegment vertexData() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MemorySegment indexData() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MemorySegment vertexDataSlice() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean shouldReallocateVertexData() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldReallocateIndexData() {
+            return false;
+        }
+
+        @Override
+        public VertexLayout vertexLayout() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.gen;
+
+import freeworld.core.registry.BuiltinRegistries;
+import freeworld.world.block.BlockTypes;
+import freeworld.world.chunk.Chunk;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the chunks generated per second on one core.
+ * <p>
+ * The chunks are generated a column at a time, from {@value #MIN_Y} to {@value #MAX_Y}, which covers the surface
+ * and the chunks right below and above it. The columns walk over {@value #COLUMNS} positions,
+ * more than the {@linkplain ColumnCache#DEFAULT_CAPACITY column cache} holds, so that every column is generated
+ * once for the chunks that share it, as when a world is explored.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class ChunkGeneratorBenchmark {
+    private static final int MIN_Y = -3;
+    private static final int MAX_Y = 2;
+    private static final int COLUMNS = 4096;
+    private static final int COLUMNS_SIDE = 64;
+    @Param({"noise", "flat"})
+    public String generator;
+    private ChunkGenerator chunkGenerator;
+    private int column = 0;
+    private int y = MIN_Y;
+
+    @Setup
+    public void setUp() {
+        BlockTypes.bootstrap();
+        if (!BuiltinRegistries.BLOCK_TYPE.frozen()) {
+            BuiltinRegistries.BLOCK_TYPE.freeze();
+        }
+        chunkGenerator = switch (generator) {
+            case "noise" -> new NoiseChunkGenerator(42L);
+            case "flat" -> new FlatChunkGenerator();
+            default -> throw new IllegalArgumentException(STR."Unknown generator: \{generator}");
+        };
+    }
+
+    @Benchmark
+    public Chunk generate() {
+        final Chunk chunk = new Chunk(null, column % COLUMNS_SIDE, y, column / COLUMNS_SIDE);
+        chunkGenerator.generate(chunk);
+        if (++y > MAX_Y) {
+            y = MIN_Y;
+            column = (column + 1) % COLUMNS;
+        }
+        return chunk;
+    }
+}
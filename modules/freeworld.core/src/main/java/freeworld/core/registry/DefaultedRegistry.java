@@ -52,4 +52,10 @@ public class DefaultedRegistry<T> extends MappedRegistry<T> {
         return id != null ? id : super.getId(getDefaultValue());
     }
 
+    @Override
+    public int getRawId(T entry) {
+        final int rawId = super.getRawId(entry);
+        return rawId != -1 ? rawId : super.getRawId(getDefaultValue());
+    }
+
 }
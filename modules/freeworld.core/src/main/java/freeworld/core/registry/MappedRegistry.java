@@ -34,6 +34,7 @@ public class MappedRegistry<T> implements MutableRegistry<T> {
     private final Map<T, Identifier> entryToIdMap = HashMap.newHashMap(DEFAULT_CAPACITY);
     private final Map<Integer, T> rawIdToEntryMap = HashMap.newHashMap(DEFAULT_CAPACITY);
     private final Map<Identifier, Integer> idToRawIdMap=HashMap.newHashMap(DEFAULT_CAPACITY);
+    private final Map<T, Integer> entryToRawIdMap = HashMap.newHashMap(DEFAULT_CAPACITY);
     private int nextId = -1;
     private boolean frozen = false;
 
@@ -56,8 +57,10 @@ public class MappedRegistry<T> implements MutableRegistry<T> {
             logger.warn("Attempts to overwrite an existing key {}; this might be an programming error. Please remove it first", identifier);
         }
         idToEntryMap.put(identifier, entry);
+        entryToIdMap.put(entry, identifier);
         rawIdToEntryMap.put(rawId, entry);
         idToRawIdMap.put(identifier,rawId);
+        entryToRawIdMap.put(entry, rawId);
         if (rawId > nextId) {
             nextId = rawId;
         }
@@ -83,6 +86,8 @@ public class MappedRegistry<T> implements MutableRegistry<T> {
         final T oldValue = idToEntryMap.remove(identifier);
         final Integer oldRawId = idToRawIdMap.remove(identifier);
         rawIdToEntryMap.remove(oldRawId);
+        entryToIdMap.remove(oldValue);
+        entryToRawIdMap.remove(oldValue);
         return oldValue;
     }
 
@@ -118,6 +123,17 @@ public class MappedRegistry<T> implements MutableRegistry<T> {
         return entryToIdMap.get(entry);
     }
 
+    @Override
+    public int getRawId(T entry) {
+        final Integer rawId = entryToRawIdMap.get(entry);
+        return rawId != null ? rawId : -1;
+    }
+
+    @Override
+    public int maxRawId() {
+        return nextId;
+    }
+
     @NotNull
     @Override
     public Iterator<Map.Entry<Identifier, T>> iterator() {
@@ -46,4 +46,16 @@ public interface Registry<T> extends Iterable<Map.Entry<Identifier, T>> {
     T getByRawId(int rawId);
 
     Identifier getId(T entry);
+
+    /**
+     * {@return the raw ID of the given entry, or {@code -1} if it is absent}
+     *
+     * @param entry the entry
+     */
+    int getRawId(T entry);
+
+    /**
+     * {@return the largest raw ID that has been assigned, or {@code -1} if none}
+     */
+    int maxRawId();
 }
@@ -0,0 +1,301 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * A concurrent open-addressing hash map with primitive {@code long} keys.
+ * <p>
+ * Reads are lock-free and allocation-free; writes are serialized by a lock on this map.
+ * A slot of a table, once assigned to a key, is never reused by another key;
+ * removed entries leave a tombstone that is dropped when the table is rebuilt.
+ * <p>
+ * {@link #EMPTY_KEY} is reserved and cannot be used as a key.
+ *
+ * @param <V> the type of the values
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ConcurrentLongMap<V> {
+    public static final long EMPTY_KEY = Long.MIN_VALUE;
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final int MIN_CAPACITY = 16;
+    private volatile Table table;
+    private int size = 0;
+
+    public ConcurrentLongMap(int expectedSize) {
+        this.table = new Table(tableCapacity(expectedSize));
+    }
+
+    public ConcurrentLongMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Functional interface consuming a key and its value.
+     *
+     * @param <V> the type of the value
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final Object[] values;
+        private final int mask;
+        /**
+         * Count of slots that have been assigned a key, including tombstones.
+         */
+        private int used = 0;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(keys, EMPTY_KEY);
+        }
+    }
+
+    private static int tableCapacity(int expectedSize) {
+        final int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize) * 2 - 1) << 1;
+        return Math.max(MIN_CAPACITY, capacity);
+    }
+
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("The empty key is reserved");
+        }
+    }
+
+    /**
+     * {@return the slot of the given key in the given table, or {@code -1} if absent}
+     */
+    private static int find(Table table, long key) {
+        final long[] keys = table.keys;
+        final int mask = table.mask;
+        int i = hash(key) & mask;
+        while (true) {
+            final long k = (long) KEYS.getAcquire(keys, i);
+            if (k == key) {
+                return i;
+            }
+            if (k == EMPTY_KEY) {
+                return -1;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final Table t = table;
+        final int i = find(t, key);
+        return i != -1 ? (V) VALUES.getAcquire(t.values, i) : null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Inserts into a table that is known to have space; must be called while holding the lock.
+     */
+    @SuppressWarnings("unchecked")
+    private V insert(Table t, long key, V value, boolean onlyIfAbsent) {
+        final long[] keys = t.keys;
+        final int mask = t.mask;
+        int i = hash(key) & mask;
+        while (true) {
+            final long k = keys[i];
+            if (k == key) {
+                final V old = (V) t.values[i];
+                if (old == null) {
+                    size++;
+                } else if (onlyIfAbsent) {
+                    return old;
+                }
+                VALUES.setRelease(t.values, i, value);
+                return old;
+            }
+            if (k == EMPTY_KEY) {
+                // publish the value before the key so that readers seeing the key also see the value
+                VALUES.setRelease(t.values, i, value);
+                KEYS.setRelease(keys, i, key);
+                t.used++;
+                size++;
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private Table ensureCapacity() {
+        final Table t = table;
+        // keep the load factor including tombstones under 1/2
+        if ((t.used + 1) * 2 <= t.keys.length) {
+            return t;
+        }
+        final Table newTable = new Table(tableCapacity(size + 1));
+        final long[] keys = t.keys;
+        final Object[] values = t.values;
+        for (int i = 0; i < keys.length; i++) {
+            final Object value = values[i];
+            if (keys[i] != EMPTY_KEY && value != null) {
+                final long key = keys[i];
+                int j = hash(key) & newTable.mask;
+                while (newTable.keys[j] != EMPTY_KEY) {
+                    j = (j + 1) & newTable.mask;
+                }
+                newTable.keys[j] = key;
+                newTable.values[j] = value;
+                newTable.used++;
+            }
+        }
+        // volatile write publishes the filled table
+        table = newTable;
+        return newTable;
+    }
+
+    public synchronized V put(long key, V value) {
+        checkKey(key);
+        if (value == null) {
+            return remove(key);
+        }
+        return insert(ensureCapacity(), key, value, false);
+    }
+
+    public synchronized V putIfAbsent(long key, V value) {
+        checkKey(key);
+        if (value == null) {
+            return get(key);
+        }
+        return insert(ensureCapacity(), key, value, true);
+    }
+
+    /**
+     * Gets the value of the given key, or computes and inserts it if absent.
+     * <p>
+     * The lookup of a present value is lock-free.
+     * The mapping function is invoked while holding the write lock, so it should be short.
+     *
+     * @param key             the key
+     * @param mappingFunction the mapping function
+     * @return the current or computed value
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        final V v = get(key);
+        if (v != null) {
+            return v;
+        }
+        synchronized (this) {
+            checkKey(key);
+            final V current = get(key);
+            if (current != null) {
+                return current;
+            }
+            final V value = mappingFunction.apply(key);
+            if (value != null) {
+                insert(ensureCapacity(), key, value, false);
+            }
+            return value;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(long key) {
+        final Table t = table;
+        final int i = find(t, key);
+        if (i == -1) {
+            return null;
+        }
+        final V old = (V) t.values[i];
+        if (old != null) {
+            VALUES.setRelease(t.values, i, null);
+            size--;
+        }
+        return old;
+    }
+
+    /**
+     * Removes the entry of the given key only if its value is the given value, compared by identity.
+     *
+     * @param key   the key
+     * @param value the expected value
+     * @return {@code true} if the entry was removed
+     */
+    public synchronized boolean remove(long key, V value) {
+        final Table t = table;
+        final int i = find(t, key);
+        if (i == -1 || t.values[i] != value) {
+            return false;
+        }
+        VALUES.setRelease(t.values, i, null);
+        size--;
+        return true;
+    }
+
+    public synchronized void clear() {
+        table = new Table(MIN_CAPACITY);
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Performs the given action for each entry present at the time of the call.
+     *
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        final Table t = table;
+        final long[] keys = t.keys;
+        final Object[] values = t.values;
+        for (int i = 0; i < keys.length; i++) {
+            final long key = (long) KEYS.getAcquire(keys, i);
+            if (key != EMPTY_KEY) {
+                final V value = (V) VALUES.getAcquire(values, i);
+                if (value != null) {
+                    action.accept(key, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@return a snapshot of the values}
+     */
+    public List<V> values() {
+        final List<V> list = new ArrayList<>();
+        forEach((_, value) -> list.add(value));
+        return list;
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world;
+
+import freeworld.world.block.BlockType;
+
+/**
+ * Read access to blocks by absolute position.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public interface BlockGetter {
+    boolean isBlockLoaded(int x, int y, int z);
+
+    BlockType getBlockType(int x, int y, int z);
+}
@@ -0,0 +1,97 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world;
+
+import freeworld.world.block.BlockType;
+import freeworld.world.block.BlockTypes;
+import freeworld.world.chunk.Chunk;
+import freeworld.world.chunk.ChunkPos;
+
+import java.util.Arrays;
+
+/**
+ * A block getter that remembers the chunks it resolved.
+ * <p>
+ * The chunks are cached in 8 slots selected by the lowest bit of each chunk coordinate,
+ * so that any 2x2x2 neighbourhood of chunks can be accessed without hashing.
+ * A cached chunk that has been {@linkplain World#unloadChunk(int, int, int) unloaded} is resolved again.
+ * <p>
+ * This class is not thread-safe; use one instance per thread.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class CachedBlockGetter implements BlockGetter {
+    private static final int SLOT_COUNT = 8;
+    private final World world;
+    private final long[] keys = new long[SLOT_COUNT];
+    private final Chunk[] chunks = new Chunk[SLOT_COUNT];
+
+    public CachedBlockGetter(World world) {
+        this.world = world;
+    }
+
+    private static int slot(int chunkX, int chunkY, int chunkZ) {
+        return ((chunkX & 1) << 2) | ((chunkY & 1) << 1) | (chunkZ & 1);
+    }
+
+    /**
+     * {@return the chunk containing the given block, or {@code null} if it is not loaded}
+     *
+     * @param x the absolute x
+     * @param y the absolute y
+     * @param z the absolute z
+     */
+    public Chunk getChunkByAbsolutePos(int x, int y, int z) {
+        final int chunkX = ChunkPos.absoluteToChunk(x);
+        final int chunkY = ChunkPos.absoluteToChunk(y);
+        final int chunkZ = ChunkPos.absoluteToChunk(z);
+        final int slot = slot(chunkX, chunkY, chunkZ);
+        final long key = ChunkPos.pack(chunkX, chunkY, chunkZ);
+        final Chunk cached = chunks[slot];
+        if (cached != null && keys[slot] == key && !cached.isUnloaded()) {
+            return cached;
+        }
+        final Chunk chunk = world.getChunk(key);
+        chunks[slot] = chunk;
+        keys[slot] = key;
+        return chunk;
+    }
+
+    @Override
+    public boolean isBlockLoaded(int x, int y, int z) {
+        return getChunkByAbsolutePos(x, y, z) != null;
+    }
+
+    @Override
+    public BlockType getBlockType(int x, int y, int z) {
+        final Chunk chunk = getChunkByAbsolutePos(x, y, z);
+        if (chunk != null) {
+            return chunk.getBlockType(
+                ChunkPos.absoluteToRelative(x),
+                ChunkPos.absoluteToRelative(y),
+                ChunkPos.absoluteToRelative(z)
+            );
+        }
+        return BlockTypes.AIR;
+    }
+
+    /**
+     * Forgets all cached chunks.
+     */
+    public void clear() {
+        Arrays.fill(chunks, null);
+    }
+
+    public World world() {
+        return world;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world;
+
+import freeworld.util.ConcurrentLongMap;
+import freeworld.util.Logging;
+import freeworld.world.chunk.Chunk;
+import freeworld.world.chunk.ChunkPos;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Loads chunks on a pool of worker threads, reading them from the {@linkplain World#storage() storage} of the world
+ * or generating their terrain if they are not stored.
+ * <p>
+ * Chunks are {@linkplain #request(int, int, int) requested} from any thread; the requests of a chunk
+ * that is already requested share one future. The workers generate the requested chunks nearest to
+ * the {@linkplain #setFocus(double[]) focus points} first, and the generated chunks are
+ * {@linkplain #integrate() integrated} into the world on the tick thread, which completes their futures.
+ * <p>
+ * The queue is a heap ordered by the distance of each request to the focus points, computed when the request
+ * is queued; it is ordered again only when the focus points move by more than {@value #REFOCUS_DISTANCE} blocks.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkGenerationService implements AutoCloseable {
+    private static final Logger logger = Logging.caller();
+    private final World world;
+    private final ConcurrentLongMap<Request> requests = new ConcurrentLongMap<>();
+    /**
+     * The distance, in blocks, that a focus point moves before the queue is ordered again.
+     */
+    private static final double REFOCUS_DISTANCE = Chunk.SIZE / 2.0;
+    private PriorityQueue<Request> queue = new PriorityQueue<>();
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Queue<Request> generated = new ConcurrentLinkedQueue<>();
+    private final Thread[] workers;
+    /**
+     * The positions, as x, y, z triples, that the queue is ordered by. Guarded by the lock.
+     */
+    private double[] focus = new double[0];
+    private volatile boolean closed = false;
+
+    private static final class Request implements Comparable<Request> {
+        private final int x;
+        private final int y;
+        private final int z;
+        private final CompletableFuture<Chunk> future = new CompletableFuture<>();
+        private Chunk chunk;
+        /**
+         * The squared distance to the nearest focus point, which orders the queue. Guarded by the lock.
+         */
+        private double distance;
+
+        private Request(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public int compareTo(Request o) {
+            return Double.compare(distance, o.distance);
+        }
+    }
+
+    /**
+     * Creates the service and starts its workers.
+     *
+     * @param world       the world to generate chunks for
+     * @param workerCount the count of worker threads, at least 1
+     */
+    public ChunkGenerationService(World world, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException(STR."workerCount must be at least 1, got \{workerCount}");
+        }
+        this.world = world;
+        this.workers = new Thread[workerCount];
+        final Thread.Builder builder = Thread.ofPlatform().name("ChunkGenerator-", 0).daemon();
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = builder.start(this::work);
+        }
+    }
+
+    /**
+     * Requests the given chunk to be generated. This method is thread-safe.
+     * <p>
+     * The returned future is shared by all requests of the chunk until it is generated,
+     * and completes on the tick thread once the chunk is loaded in the world.
+     * Cancelling it cancels the generation if it has not started, for all requests sharing it;
+     * the chunk can then be requested again.
+     *
+     * @param x the chunk x
+     * @param y the chunk y
+     * @param z the chunk z
+     * @return the future of the chunk
+     */
+    public CompletableFuture<Chunk> request(int x, int y, int z) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new CancellationException("Chunk generation service closed"));
+        }
+        final long pos = ChunkPos.pack(x, y, z);
+        final Request existing = requests.get(pos);
+        if (existing != null) {
+            return existing.future;
+        }
+        final Request request = new Request(x, y, z);
+        final Request previous = requests.putIfAbsent(pos, request);
+        if (previous != null) {
+            return previous.future;
+        }
+        lock.lock();
+        try {
+            request.distance = distanceSquared(request, focus);
+            queue.add(request);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        // a cancelled request is forgotten at once, so that the chunk can be requested again
+        request.future.whenComplete((_, _) -> {
+            if (request.future.isCancelled()) {
+                forget(pos, request);
+            }
+        });
+        return request.future;
+    }
+
+    /**
+     * Sets the positions around which chunks are generated first. This method is thread-safe.
+     *
+     * @param focus the positions as x, y, z triples of absolute coordinates
+     */
+    public void setFocus(double[] focus) {
+        if (focus.length % 3 != 0) {
+            throw new IllegalArgumentException(STR."focus must be x, y, z triples, got length \{focus.length}");
+        }
+        lock.lock();
+        try {
+            if (isNear(focus, this.focus)) {
+                return;
+            }
+            this.focus = focus.clone();
+            final List<Request> requests = new ArrayList<>(queue);
+            for (Request request : requests) {
+                request.distance = distanceSquared(request, this.focus);
+            }
+            queue = new PriorityQueue<>(requests);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@return {@code true} if each point of the given focus is within {@link #REFOCUS_DISTANCE} of the same point of the previous one}
+     */
+    private static boolean isNear(double[] focus, double[] previous) {
+        if (focus.length != previous.length) {
+            return false;
+        }
+        for (int i = 0; i < focus.length; i += 3) {
+            final double dx = focus[i] - previous[i];
+            final double dy = focus[i + 1] - previous[i + 1];
+            final double dz = focus[i + 2] - previous[i + 2];
+            if (dx * dx + dy * dy + dz * dz > REFOCUS_DISTANCE * REFOCUS_DISTANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void forget(long pos, Request request) {
+        requests.remove(pos, request);
+        lock.lock();
+        try {
+            queue.remove(request);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            final Request request;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                request = queue.poll();
+            } finally {
+                lock.unlock();
+            }
+            if (request.future.isDone()) {
+                requests.remove(ChunkPos.pack(request.x, request.y, request.z), request);
+                continue;
+            }
+            try {
+                final Chunk chunk = new Chunk(world, request.x, request.y, request.z);
+                if (!world.storage().readChunk(chunk)) {
+                    world.generator().generate(chunk);
+                }
+                request.chunk = chunk;
+                generated.add(request);
+            } catch (Throwable t) {
+                logger.error(STR."Error thrown generating chunk \{request.x}, \{request.y}, \{request.z}", t);
+                requests.remove(ChunkPos.pack(request.x, request.y, request.z), request);
+                request.future.completeExceptionally(t);
+            }
+        }
+    }
+
+    private static double distanceSquared(Request request, double[] focus) {
+        if (focus.length == 0) {
+            return 0.0;
+        }
+        final double centerX = (request.x + 0.5) * Chunk.SIZE;
+        final double centerY = (request.y + 0.5) * Chunk.SIZE;
+        final double centerZ = (request.z + 0.5) * Chunk.SIZE;
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < focus.length; i += 3) {
+            final double dx = centerX - focus[i];
+            final double dy = centerY - focus[i + 1];
+            final double dz = centerZ - focus[i + 2];
+            min = Math.min(min, dx * dx + dy * dy + dz * dz);
+        }
+        return min;
+    }
+
+    /**
+     * Loads the generated chunks into the world and completes their futures. Called on the tick thread.
+     *
+     * @return the count of chunks loaded
+     */
+    int integrate() {
+        int count = 0;
+        Request request;
+        while ((request = generated.poll()) != null) {
+            final Chunk chunk = world.loadGeneratedChunk(request.chunk);
+            requests.remove(ChunkPos.pack(request.x, request.y, request.z), request);
+            request.future.complete(chunk);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * {@return the count of chunks requested and not yet loaded}
+     */
+    public int pendingCount() {
+        return requests.size();
+    }
+
+    /**
+     * {@return the count of requests waiting for a worker}
+     */
+    public int queuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int workerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Stops the workers after the chunks being generated and cancels all other requests.
+     */
+    @Override
+    public void close() {
+        final List<Request> queued;
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            queued = new ArrayList<>(queue);
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (Request request : queued) {
+            request.future.cancel(false);
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        Request request;
+        while ((request = generated.poll()) != null) {
+            request.future.cancel(false);
+        }
+        requests.clear();
+    }
+}
@@ -11,36 +11,92 @@
 package freeworld.world;
 
 import freeworld.core.math.AABBox;
+import freeworld.util.ConcurrentLongMap;
 import freeworld.util.Int3Consumer;
+import freeworld.util.Logging;
 import freeworld.world.block.BlockType;
 import freeworld.world.block.BlockTypes;
 import freeworld.world.chunk.Chunk;
 import freeworld.world.chunk.ChunkPos;
 import freeworld.world.entity.Entity;
 import freeworld.world.entity.EntityType;
+import freeworld.world.entity.EntityTypes;
 import freeworld.world.entity.component.PositionComponent;
 import freeworld.world.entity.system.MotionSystem;
+import freeworld.world.gen.ChunkGenerator;
+import freeworld.world.gen.FlatChunkGenerator;
+import freeworld.world.storage.WorldStorage;
+import org.slf4j.Logger;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
+ * The world.
+ * <p>
+ * Chunks are read from the {@link WorldStorage} or generated in the background by the {@link ChunkGenerationService},
+ * and loaded on the tick thread, which never waits for terrain.
+ * Chunks far from every player are unloaded periodically. Modified chunks are saved every
+ * {@value #SAVE_INTERVAL} ticks, when unloaded and when the world is closed; the tick thread only copies them,
+ * and the {@linkplain WorldStorage#saveQueue() save queue} writes them in the background.
+ *
  * @author squid233
  * @since 0.1.0
  */
-public final class World {
+public final class World implements BlockGetter, AutoCloseable {
+    private static final Logger logger = Logging.caller();
     public static final int TICKING_RADIUS = 5;
     public static final int TICKING_CHUNK_COUNT_CBRT = TICKING_RADIUS * 2 + 1;
     public static final int TICKING_CHUNK_COUNT = TICKING_CHUNK_COUNT_CBRT * TICKING_CHUNK_COUNT_CBRT * TICKING_CHUNK_COUNT_CBRT;
-    public final Map<ChunkPos, Chunk> chunks = new ConcurrentHashMap<>(TICKING_CHUNK_COUNT);
+    /**
+     * The count of ticks between two unloads of far chunks.
+     */
+    private static final int UNLOAD_INTERVAL = 600;
+    /**
+     * The distance in chunks beyond {@link #TICKING_RADIUS} from every player at which chunks are unloaded.
+     */
+    private static final int UNLOAD_MARGIN = 2;
+    /**
+     * The count of ticks between two saves of the modified chunks.
+     */
+    private static final int SAVE_INTERVAL = 100;
+    /**
+     * Loaded chunks keyed by {@linkplain ChunkPos#pack(int, int, int) packed position}.
+     */
+    public final ConcurrentLongMap<Chunk> chunks = new ConcurrentLongMap<>(TICKING_CHUNK_COUNT);
+    /**
+     * Loaded chunks modified since they were last saved.
+     */
+    private final ConcurrentLongMap<Chunk> dirtyChunks = new ConcurrentLongMap<>();
     private final List<Entity> entities = new ArrayList<>();
     private final MotionSystem motionSystem = new MotionSystem();
     private final List<WorldListener> listeners = new ArrayList<>();
+    private final String name;
+    private final ChunkGenerator generator;
+    private final WorldStorage storage;
+    private final ChunkGenerationService generationService;
+    private int tickCount = 0;
+
+    /**
+     * Creates the world, stored under {@code saves/<name>}.
+     *
+     * @param name      the name of the world
+     * @param generator the generator of the chunks that are not stored
+     */
+    public World(String name, ChunkGenerator generator) {
+        this.name = name;
+        this.generator = generator;
+        this.storage = new WorldStorage(Path.of("saves", name));
+        // started last, as its workers read the fields above
+        this.generationService = new ChunkGenerationService(this, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
 
     public World(String name) {
+        this(name, new FlatChunkGenerator());
     }
 
     public static void forEachChunk(Entity player, int chunkRadius, Int3Consumer consumer) {
@@ -66,7 +122,44 @@ public final class World {
     }
 
     public void tick() {
+        final double[] players = playerPositions();
+        generationService.setFocus(players);
+        generationService.integrate();
         motionSystem.process(this, entities);
+        if (++tickCount % UNLOAD_INTERVAL == 0 && players.length > 0) {
+            unloadFarChunks(players);
+        }
+        if (tickCount % SAVE_INTERVAL == 0) {
+            dirtyChunks.forEach((_, chunk) -> saveChunk(chunk));
+        }
+    }
+
+    private void unloadFarChunks(double[] players) {
+        final int limit = TICKING_RADIUS + UNLOAD_MARGIN;
+        chunks.forEach((_, chunk) -> {
+            for (int i = 0; i < players.length; i += 3) {
+                final int dx = Math.abs(chunk.x() - ChunkPos.absoluteToChunk((int) Math.floor(players[i])));
+                final int dy = Math.abs(chunk.y() - ChunkPos.absoluteToChunk((int) Math.floor(players[i + 1])));
+                final int dz = Math.abs(chunk.z() - ChunkPos.absoluteToChunk((int) Math.floor(players[i + 2])));
+                if (Math.max(dx, Math.max(dy, dz)) <= limit) {
+                    return;
+                }
+            }
+            unloadChunk(chunk.x(), chunk.y(), chunk.z());
+        });
+    }
+
+    private double[] playerPositions() {
+        int count = 0;
+        final double[] positions = new double[entities.size() * 3];
+        for (Entity entity : entities) {
+            if (entity.entityType() == EntityTypes.PLAYER && entity.hasComponent(PositionComponent.ID)) {
+                positions[count++] = entity.position().value().x();
+                positions[count++] = entity.position().value().y();
+                positions[count++] = entity.position().value().z();
+            }
+        }
+        return count == positions.length ? positions : Arrays.copyOf(positions, count);
     }
 
     public Entity createEntity(EntityType type, double x, double y, double z) {
@@ -78,41 +171,112 @@ public final class World {
         return entity;
     }
 
+    public boolean isChunkLoaded(long packedPos) {
+        return chunks.containsKey(packedPos);
+    }
+
     public boolean isChunkLoaded(int x, int y, int z) {
-        return chunks.containsKey(new ChunkPos(x, y, z));
+        return isChunkLoaded(ChunkPos.pack(x, y, z));
     }
 
+    @Override
     public boolean isBlockLoaded(int x, int y, int z) {
-        return isChunkLoaded(
-            ChunkPos.absoluteToChunk(x),
-            ChunkPos.absoluteToChunk(y),
-            ChunkPos.absoluteToChunk(z)
-        );
-    }
-
-    public Chunk getOrCreateChunk(int x, int y, int z) {
-        return chunks.computeIfAbsent(
-            new ChunkPos(x, y, z),
-            chunkPos -> {
-                final Chunk chunk = new Chunk(this, chunkPos.x(), chunkPos.y(), chunkPos.z());
-                chunk.generateTerrain();
-                return chunk;
+        return isChunkLoaded(ChunkPos.packAbsolute(x, y, z));
+    }
+
+    /**
+     * Requests the given chunk to be loaded. This method is thread-safe and never blocks.
+     *
+     * @param x the chunk x
+     * @param y the chunk y
+     * @param z the chunk z
+     * @return the future of the chunk, completed on the tick thread once the chunk is loaded
+     * @see ChunkGenerationService#request(int, int, int)
+     */
+    public CompletableFuture<Chunk> requestChunk(int x, int y, int z) {
+        final Chunk chunk = getChunk(x, y, z);
+        if (chunk != null) {
+            return CompletableFuture.completedFuture(chunk);
+        }
+        return generationService.request(x, y, z);
+    }
+
+    /**
+     * Loads a generated chunk and notifies the listeners. Called on the tick thread.
+     *
+     * @param chunk the generated chunk
+     * @return the loaded chunk at the position, which is the existing one if there was
+     */
+    Chunk loadGeneratedChunk(Chunk chunk) {
+        final Chunk existing = chunks.putIfAbsent(ChunkPos.pack(chunk.x(), chunk.y(), chunk.z()), chunk);
+        if (existing != null) {
+            return existing;
+        }
+        for (WorldListener listener : listeners) {
+            listener.onChunkLoaded(chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Unloads the chunk at the given position, marks it as unloaded, queues it to be saved if it is modified
+     * and notifies the listeners.
+     *
+     * @param x the chunk x
+     * @param y the chunk y
+     * @param z the chunk z
+     * @return the unloaded chunk, or {@code null} if it was not loaded
+     */
+    public Chunk unloadChunk(int x, int y, int z) {
+        final Chunk chunk = chunks.remove(ChunkPos.pack(x, y, z));
+        if (chunk != null) {
+            chunk.markUnloaded();
+            saveChunk(chunk);
+            for (WorldListener listener : listeners) {
+                listener.onChunkUnloaded(chunk);
             }
-        );
+        }
+        return chunk;
+    }
+
+    /**
+     * Queues the given chunk to be saved if it is modified. Called on the tick thread.
+     */
+    private void saveChunk(Chunk chunk) {
+        if (!chunk.isDirty()) {
+            return;
+        }
+        dirtyChunks.remove(ChunkPos.pack(chunk.x(), chunk.y(), chunk.z()));
+        chunk.markSaved();
+        storage.saveChunk(chunk);
+    }
+
+    /**
+     * Records that the given chunk is modified since it was last saved. Called by {@link Chunk#markDirty()}.
+     * Only the loaded chunk at its position is saved; other chunks, such as the copies of renderers, are ignored.
+     *
+     * @param chunk the chunk
+     */
+    public void onChunkDirty(Chunk chunk) {
+        final long pos = ChunkPos.pack(chunk.x(), chunk.y(), chunk.z());
+        if (getChunk(pos) == chunk) {
+            dirtyChunks.put(pos, chunk);
+        }
+    }
+
+    public Chunk getChunk(long packedPos) {
+        return chunks.get(packedPos);
     }
 
     public Chunk getChunk(int x, int y, int z) {
-        return chunks.get(new ChunkPos(x, y, z));
+        return getChunk(ChunkPos.pack(x, y, z));
     }
 
     public Chunk getChunkByAbsolutePos(int x, int y, int z) {
-        return getChunk(
-            ChunkPos.absoluteToChunk(x),
-            ChunkPos.absoluteToChunk(y),
-            ChunkPos.absoluteToChunk(z)
-        );
+        return getChunk(ChunkPos.packAbsolute(x, y, z));
     }
 
+    @Override
     public BlockType getBlockType(int x, int y, int z) {
         final Chunk chunk = getChunkByAbsolutePos(x, y, z);
         if (chunk != null) {
@@ -134,9 +298,37 @@ public final class World {
                 ChunkPos.absoluteToRelative(z),
                 blockType
             );
+            chunk.markDirty();
             for (WorldListener listener : listeners) {
                 listener.onBlockChanged(x, y, z);
             }
         }
     }
+
+    public String name() {
+        return name;
+    }
+
+    public WorldStorage storage() {
+        return storage;
+    }
+
+    public ChunkGenerator generator() {
+        return generator;
+    }
+
+    public ChunkGenerationService generationService() {
+        return generationService;
+    }
+
+    /**
+     * Stops generating chunks, saves the modified chunks and waits until they are written.
+     */
+    @Override
+    public void close() {
+        generationService.close();
+        dirtyChunks.forEach((_, chunk) -> saveChunk(chunk));
+        logger.info("Saving {} chunks of world {}", storage.saveQueue().queueDepth(), name);
+        storage.close();
+    }
 }
@@ -10,10 +10,26 @@
 
 package freeworld.world;
 
+import freeworld.world.chunk.Chunk;
+
 /**
  * @author squid233
  * @since 0.1.0
  */
 public interface WorldListener {
     void onBlockChanged(int x, int y, int z);
+
+    /**
+     * Called on the tick thread after the given chunk is loaded into the world.
+     *
+     * @param chunk the loaded chunk
+     */
+    void onChunkLoaded(Chunk chunk);
+
+    /**
+     * Called on the tick thread after the given chunk is removed from the world and {@linkplain Chunk#markUnloaded() marked unloaded}.
+     *
+     * @param chunk the unloaded chunk
+     */
+    void onChunkUnloaded(Chunk chunk);
 }
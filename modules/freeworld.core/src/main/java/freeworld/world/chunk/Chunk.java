@@ -14,7 +14,6 @@ import freeworld.world.World;
 import freeworld.world.block.BlockType;
 import freeworld.world.block.BlockTypes;
 
-import java.util.Arrays;
 import java.util.StringJoiner;
 
 /**
@@ -37,7 +36,9 @@ public class Chunk {
     private final int width;
     private final int height;
     private final int depth;
-    private final BlockType[] blocks;
+    private final PalettedStorage blocks;
+    private volatile boolean unloaded = false;
+    private volatile boolean dirty = false;
 
     public Chunk(World world, int x, int y, int z) {
         this.world = world;
@@ -53,25 +54,7 @@ public class Chunk {
         this.width = toX - fromX;
         this.height = toY - fromY;
         this.depth = toZ - fromZ;
-        this.blocks = new BlockType[width * height * depth];
-        Arrays.fill(blocks, BlockTypes.AIR);
-    }
-
-    public void generateTerrain() {
-        for (int bx = 0; bx < width; bx++) {
-            for (int bz = 0; bz < depth; bz++) {
-                for (int by = 0; by < height; by++) {
-                    final int absY = ChunkPos.relativeToAbsolute(y, by);
-                    if (absY < -4) {
-                        setBlockType(bx, by, bz, BlockTypes.STONE);
-                    } else if (absY < -1) {
-                        setBlockType(bx, by, bz, BlockTypes.DIRT);
-                    } else if (absY == -1) {
-                        setBlockType(bx, by, bz, BlockTypes.GRASS_BLOCK);
-                    }
-                }
-            }
-        }
+        this.blocks = new PalettedStorage(width * height * depth, BlockTypes.AIR);
     }
 
     public boolean isInBound(int x, int y, int z) {
@@ -80,22 +63,70 @@ public class Chunk {
 
     public void setBlockType(int x, int y, int z, BlockType blockType) {
         if (isInBound(x, y, z)) {
-            blocks[(y * depth + z) * width + x] = blockType;
+            blocks.set((y * depth + z) * width + x, blockType);
         }
     }
 
     public BlockType getBlockType(int x, int y, int z) {
         if (isInBound(x, y, z)) {
-            return blocks[(y * depth + z) * width + x];
+            return blocks.get((y * depth + z) * width + x);
         }
         return BlockTypes.AIR;
     }
 
+    public void fill(BlockType blockType) {
+        blocks.fill(blockType);
+    }
+
+    /**
+     * {@return the block type filling this whole chunk, or {@code null} if this chunk has more than one type}
+     */
+    public BlockType uniformBlockType() {
+        return blocks.uniformValue();
+    }
+
+    /**
+     * Marks this chunk as modified since it was last saved.
+     * The first modification since then queues this chunk to be {@linkplain World#onChunkDirty saved}.
+     */
     public void markDirty() {
+        if (!dirty) {
+            dirty = true;
+            world.onChunkDirty(this);
+        }
+    }
+
+    /**
+     * {@return {@code true} if this chunk was modified since it was last saved}
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks this chunk as saved.
+     */
+    public void markSaved() {
+        dirty = false;
+    }
+
+    /**
+     * Marks this chunk as removed from its world.
+     */
+    public void markUnloaded() {
+        unloaded = true;
+    }
+
+    public boolean isUnloaded() {
+        return unloaded;
     }
 
     public void copyFrom(Chunk chunk) {
-        System.arraycopy(chunk.blocks, 0, blocks, 0, blocks.length);
+        blocks.copyFrom(chunk.blocks);
+    }
+
+    public PalettedStorage blocks() {
+        return blocks;
     }
 
     public World world() {
@@ -15,6 +15,43 @@ package freeworld.world.chunk;
  * @since 0.1.0
  */
 public record ChunkPos(int x, int y, int z) {
+    private static final int PACKED_BITS = 21;
+    private static final long PACKED_MASK = (1L << PACKED_BITS) - 1L;
+
+    /**
+     * Packs the given chunk position into a {@code long} with 21 bits for each axis.
+     * <p>
+     * The result never has the sign bit set.
+     *
+     * @param x the chunk x
+     * @param y the chunk y
+     * @param z the chunk z
+     * @return the packed position
+     */
+    public static long pack(int x, int y, int z) {
+        return ((x & PACKED_MASK) << (PACKED_BITS * 2)) | ((y & PACKED_MASK) << PACKED_BITS) | (z & PACKED_MASK);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed << (Long.SIZE - PACKED_BITS * 3) >> (Long.SIZE - PACKED_BITS));
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << (Long.SIZE - PACKED_BITS * 2) >> (Long.SIZE - PACKED_BITS));
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << (Long.SIZE - PACKED_BITS) >> (Long.SIZE - PACKED_BITS));
+    }
+
+    public static long packAbsolute(int x, int y, int z) {
+        return pack(absoluteToChunk(x), absoluteToChunk(y), absoluteToChunk(z));
+    }
+
+    public long pack() {
+        return pack(x, y, z);
+    }
+
     public static int relativeToAbsolute(int chunkPos, int relativePos) {
         return chunkPos * Chunk.SIZE + relativePos;
     }
@@ -0,0 +1,158 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.chunk;
+
+import freeworld.util.Direction;
+import freeworld.world.World;
+import freeworld.world.block.BlockType;
+import freeworld.world.block.BlockTypes;
+
+/**
+ * An immutable snapshot of a render section and a 1-block halo around it.
+ * <p>
+ * A render section is a cube of {@link #SIZE} blocks; a chunk is split into {@code (Chunk.SIZE / SIZE)^3} sections.
+ * Section coordinates are block coordinates divided by {@link #SIZE}.
+ * <p>
+ * Positions are relative to the section and range from {@code -1} to {@link #SIZE} inclusive.
+ * Blocks of the halo whose chunk was not loaded at capture time are reported as not loaded.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkRegion {
+    public static final int SIZE = 16;
+    public static final int PADDED_SIZE = SIZE + 2;
+    public static final int STRIDE_X = 1;
+    public static final int STRIDE_Z = PADDED_SIZE;
+    public static final int STRIDE_Y = PADDED_SIZE * PADDED_SIZE;
+    private final int x;
+    private final int y;
+    private final int z;
+    /**
+     * The blocks in padded order; {@code null} marks a block that is not loaded.
+     */
+    private final BlockType[] blocks;
+
+    private ChunkRegion(int x, int y, int z, BlockType[] blocks) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Captures the section at the given position and its halo from the world.
+     * <p>
+     * This method must be called on the thread that mutates the world.
+     *
+     * @param world the world
+     * @param x     the section x
+     * @param y     the section y
+     * @param z     the section z
+     * @return the snapshot
+     */
+    public static ChunkRegion capture(World world, int x, int y, int z) {
+        final BlockType[] blocks = new BlockType[PADDED_SIZE * PADDED_SIZE * PADDED_SIZE];
+        final int fromX = x * SIZE - 1;
+        final int fromY = y * SIZE - 1;
+        final int fromZ = z * SIZE - 1;
+        Chunk chunk = null;
+        // packed positions never have the sign bit set
+        long chunkPos = -1L;
+        int i = 0;
+        for (int py = 0; py < PADDED_SIZE; py++) {
+            final int absY = fromY + py;
+            final int cy = ChunkPos.absoluteToChunk(absY);
+            final int by = ChunkPos.absoluteToRelative(absY);
+            for (int pz = 0; pz < PADDED_SIZE; pz++) {
+                final int absZ = fromZ + pz;
+                final int cz = ChunkPos.absoluteToChunk(absZ);
+                final int bz = ChunkPos.absoluteToRelative(absZ);
+                for (int px = 0; px < PADDED_SIZE; px++, i++) {
+                    final int absX = fromX + px;
+                    final long pos = ChunkPos.pack(ChunkPos.absoluteToChunk(absX), cy, cz);
+                    if (pos != chunkPos) {
+                        chunkPos = pos;
+                        chunk = world.getChunk(pos);
+                    }
+                    blocks[i] = chunk != null ? chunk.getBlockType(ChunkPos.absoluteToRelative(absX), by, bz) : null;
+                }
+            }
+        }
+        return new ChunkRegion(x, y, z, blocks);
+    }
+
+    /**
+     * Creates a snapshot of the given blocks.
+     *
+     * @param x      the section x
+     * @param y      the section y
+     * @param z      the section z
+     * @param blocks the blocks, at their {@linkplain #index(int, int, int) index}; {@code null} marks a block that is not loaded
+     * @return the snapshot, which holds a copy of the blocks
+     */
+    public static ChunkRegion of(int x, int y, int z, BlockType[] blocks) {
+        if (blocks.length != PADDED_SIZE * PADDED_SIZE * PADDED_SIZE) {
+            throw new IllegalArgumentException(STR."blocks must have \{PADDED_SIZE * PADDED_SIZE * PADDED_SIZE} elements, got \{blocks.length}");
+        }
+        return new ChunkRegion(x, y, z, blocks.clone());
+    }
+
+    /**
+     * {@return the index in the padded array of the given relative position}
+     *
+     * @param x the relative x, from {@code -1} to {@link #SIZE}
+     * @param y the relative y, from {@code -1} to {@link #SIZE}
+     * @param z the relative z, from {@code -1} to {@link #SIZE}
+     */
+    public static int index(int x, int y, int z) {
+        return ((y + 1) * PADDED_SIZE + (z + 1)) * PADDED_SIZE + (x + 1);
+    }
+
+    /**
+     * {@return the difference of the indices in the padded array of a block and its neighbour in the given direction}
+     *
+     * @param direction the direction
+     */
+    public static int neighborOffset(Direction direction) {
+        return direction.axisX() * STRIDE_X + direction.axisY() * STRIDE_Y + direction.axisZ() * STRIDE_Z;
+    }
+
+    /**
+     * {@return the block at the given index in the padded array, or {@code null} if it is not loaded}
+     *
+     * @param index the index from {@link #index(int, int, int)}
+     */
+    public BlockType blockAt(int index) {
+        return blocks[index];
+    }
+
+    public boolean isBlockLoaded(int x, int y, int z) {
+        return blocks[index(x, y, z)] != null;
+    }
+
+    public BlockType getBlockType(int x, int y, int z) {
+        final BlockType blockType = blocks[index(x, y, z)];
+        return blockType != null ? blockType : BlockTypes.AIR;
+    }
+
+    public int x() {
+        return x;
+    }
+
+    public int y() {
+        return y;
+    }
+
+    public int z() {
+        return z;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.chunk;
+
+import freeworld.world.block.BlockType;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Block storage backed by a palette and a bit-packed index array.
+ * <p>
+ * Each entry stores an index into the palette using {@link #bits()} bits.
+ * The index array widens from 1 up to 16 bits only when a new type does not fit into the palette.
+ * Entries never span two longs.
+ * <p>
+ * A storage filled with a single value has no index array at all ({@link #bits()} is {@code 0});
+ * it is expanded on the first {@link #set(int, BlockType) set} of a different value.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class PalettedStorage {
+    private static final int MIN_BITS = 1;
+    private static final int MAX_BITS = 16;
+    /**
+     * Palettes larger than this use a map for reverse lookup instead of a linear scan.
+     */
+    private static final int LINEAR_SCAN_LIMIT = 16;
+    private static final ValueLayout.OfInt INT_LE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG_LE = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private final int size;
+    private BlockType[] palette;
+    private int paletteSize;
+    private Map<BlockType, Integer> paletteIndices;
+    private int bits;
+    private int entriesPerLong;
+    private long mask;
+    private long[] data;
+
+    public PalettedStorage(int size, BlockType defaultValue) {
+        this.size = size;
+        fill(defaultValue);
+    }
+
+    private PalettedStorage(PalettedStorage other) {
+        this.size = other.size;
+        this.palette = other.palette.clone();
+        this.paletteSize = other.paletteSize;
+        this.paletteIndices = other.paletteIndices != null ? new IdentityHashMap<>(other.paletteIndices) : null;
+        this.bits = other.bits;
+        this.entriesPerLong = other.entriesPerLong;
+        this.mask = other.mask;
+        this.data = other.data != null ? other.data.clone() : null;
+    }
+
+    private static int dataLength(int size, int entriesPerLong) {
+        return (size + entriesPerLong - 1) / entriesPerLong;
+    }
+
+    private void resize(int newBits) {
+        final long[] oldData = data;
+        final int oldBits = bits;
+        final int oldEntriesPerLong = entriesPerLong;
+        final long oldMask = mask;
+
+        bits = newBits;
+        entriesPerLong = Long.SIZE / newBits;
+        mask = (1L << newBits) - 1L;
+        data = new long[dataLength(size, entriesPerLong)];
+
+        if (oldData != null) {
+            for (int i = 0; i < size; i++) {
+                final long value = (oldData[i / oldEntriesPerLong] >>> ((i % oldEntriesPerLong) * oldBits)) & oldMask;
+                if (value != 0L) {
+                    data[i / entriesPerLong] |= value << ((i % entriesPerLong) * newBits);
+                }
+            }
+        }
+    }
+
+    private void expand() {
+        palette = Arrays.copyOf(palette, 1 << MIN_BITS);
+        resize(MIN_BITS);
+    }
+
+    private int getIndex(int index) {
+        return (int) ((data[index / entriesPerLong] >>> ((index % entriesPerLong) * bits)) & mask);
+    }
+
+    private void setIndex(int index, int value) {
+        final int cell = index / entriesPerLong;
+        final int shift = (index % entriesPerLong) * bits;
+        data[cell] = (data[cell] & ~(mask << shift)) | (((long) value & mask) << shift);
+    }
+
+    private int findPaletteIndex(BlockType blockType) {
+        if (paletteIndices != null) {
+            final Integer i = paletteIndices.get(blockType);
+            return i != null ? i : -1;
+        }
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == blockType) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int addToPalette(BlockType blockType) {
+        if (paletteSize == palette.length) {
+            if (bits == MAX_BITS) {
+                throw new IllegalStateException(STR."Palette exceeds \{1 << MAX_BITS} entries");
+            }
+            resize(bits + 1);
+            palette = Arrays.copyOf(palette, 1 << bits);
+        }
+        final int i = paletteSize;
+        palette[i] = blockType;
+        paletteSize++;
+        if (paletteIndices != null) {
+            paletteIndices.put(blockType, i);
+        } else if (paletteSize > LINEAR_SCAN_LIMIT) {
+            paletteIndices = new IdentityHashMap<>(paletteSize * 2);
+            for (int j = 0; j < paletteSize; j++) {
+                paletteIndices.put(palette[j], j);
+            }
+        }
+        return i;
+    }
+
+    public BlockType get(int index) {
+        if (data == null) {
+            return palette[0];
+        }
+        return palette[getIndex(index)];
+    }
+
+    public void set(int index, BlockType blockType) {
+        if (data == null) {
+            if (palette[0] == blockType) {
+                return;
+            }
+            expand();
+        }
+        int i = findPaletteIndex(blockType);
+        if (i == -1) {
+            i = addToPalette(blockType);
+        }
+        setIndex(index, i);
+    }
+
+    /**
+     * Fills this storage with the given value, dropping the index array.
+     *
+     * @param blockType the value
+     */
+    public void fill(BlockType blockType) {
+        palette = new BlockType[]{blockType};
+        paletteSize = 1;
+        paletteIndices = null;
+        bits = 0;
+        entriesPerLong = 0;
+        mask = 0L;
+        data = null;
+    }
+
+    public void copyFrom(PalettedStorage other) {
+        if (size != other.size) {
+            throw new IllegalArgumentException(STR."Mismatched storage size: \{size} != \{other.size}");
+        }
+        palette = other.palette.clone();
+        paletteSize = other.paletteSize;
+        paletteIndices = other.paletteIndices != null ? new IdentityHashMap<>(other.paletteIndices) : null;
+        bits = other.bits;
+        entriesPerLong = other.entriesPerLong;
+        mask = other.mask;
+        if (other.data == null) {
+            data = null;
+        } else if (data != null && data.length == other.data.length) {
+            System.arraycopy(other.data, 0, data, 0, data.length);
+        } else {
+            data = other.data.clone();
+        }
+    }
+
+    /**
+     * {@return the count of bytes that {@link #encode(MemorySegment, long, ToIntFunction) encode} writes}
+     */
+    public long encodedByteSize() {
+        return Integer.BYTES + (long) paletteSize * Integer.BYTES + Byte.BYTES + dataByteSize();
+    }
+
+    /**
+     * Encodes this storage as the palette size, the raw IDs of the palette, the bits, and the index array,
+     * all little-endian.
+     *
+     * @param segment       the destination
+     * @param offset        the offset in the destination
+     * @param rawIdFunction the function returning the raw ID of a block type
+     * @return the offset after the encoded bytes
+     */
+    public long encode(MemorySegment segment, long offset, ToIntFunction<BlockType> rawIdFunction) {
+        segment.set(INT_LE, offset, paletteSize);
+        offset += Integer.BYTES;
+        for (int i = 0; i < paletteSize; i++) {
+            segment.set(INT_LE, offset, rawIdFunction.applyAsInt(palette[i]));
+            offset += Integer.BYTES;
+        }
+        segment.set(ValueLayout.JAVA_BYTE, offset, (byte) bits);
+        offset += Byte.BYTES;
+        if (data != null) {
+            MemorySegment.copy(data, 0, segment, LONG_LE, offset, data.length);
+            offset += (long) data.length * Long.BYTES;
+        }
+        return offset;
+    }
+
+    /**
+     * Replaces the content of this storage with the one {@linkplain #encode(MemorySegment, long, ToIntFunction) encoded}
+     * in the given segment. The index array is copied in bulk.
+     *
+     * @param segment           the source
+     * @param offset            the offset in the source
+     * @param blockTypeFunction the function returning the block type of a raw ID
+     * @return the offset after the decoded bytes
+     * @throws IllegalArgumentException if the encoded storage is malformed
+     */
+    public long decode(MemorySegment segment, long offset, IntFunction<BlockType> blockTypeFunction) {
+        final int newPaletteSize = segment.get(INT_LE, offset);
+        offset += Integer.BYTES;
+        if (newPaletteSize < 1 || newPaletteSize > (1 << MAX_BITS)) {
+            throw new IllegalArgumentException(STR."Malformed palette size \{newPaletteSize}");
+        }
+        final long bitsOffset = offset + (long) newPaletteSize * Integer.BYTES;
+        final int newBits = segment.get(ValueLayout.JAVA_BYTE, bitsOffset);
+        if (newBits == 0 ? newPaletteSize != 1 : (newBits < MIN_BITS || newBits > MAX_BITS || newPaletteSize > (1 << newBits))) {
+            throw new IllegalArgumentException(STR."Malformed bits \{newBits} for palette size \{newPaletteSize}");
+        }
+        if (newBits == 0) {
+            fill(blockTypeFunction.apply(segment.get(INT_LE, offset)));
+            return bitsOffset + Byte.BYTES;
+        }
+        final BlockType[] newPalette = new BlockType[1 << newBits];
+        for (int i = 0; i < newPaletteSize; i++) {
+            newPalette[i] = blockTypeFunction.apply(segment.get(INT_LE, offset));
+            offset += Integer.BYTES;
+        }
+        offset += Byte.BYTES;
+        palette = newPalette;
+        paletteSize = newPaletteSize;
+        paletteIndices = null;
+        if (paletteSize > LINEAR_SCAN_LIMIT) {
+            paletteIndices = new IdentityHashMap<>(paletteSize * 2);
+            for (int i = 0; i < paletteSize; i++) {
+                paletteIndices.put(palette[i], i);
+            }
+        }
+        bits = newBits;
+        entriesPerLong = Long.SIZE / newBits;
+        mask = (1L << newBits) - 1L;
+        data = new long[dataLength(size, entriesPerLong)];
+        MemorySegment.copy(segment, LONG_LE, offset, data, 0, data.length);
+        return offset + (long) data.length * Long.BYTES;
+    }
+
+    public PalettedStorage copy() {
+        return new PalettedStorage(this);
+    }
+
+    /**
+     * {@return {@code true} if this storage holds a single value without an index array}
+     */
+    public boolean isUniform() {
+        return data == null;
+    }
+
+    /**
+     * {@return the single value of this storage, or {@code null} if it is not uniform}
+     */
+    public BlockType uniformValue() {
+        return data == null ? palette[0] : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public int paletteSize() {
+        return paletteSize;
+    }
+
+    /**
+     * {@return the approximate count of bytes used by the index array}
+     */
+    public long dataByteSize() {
+        return data != null ? (long) data.length * Long.BYTES : 0L;
+    }
+}
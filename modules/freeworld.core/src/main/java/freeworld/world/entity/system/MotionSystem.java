@@ -11,6 +11,7 @@
 package freeworld.world.entity.system;
 
 import freeworld.core.math.AABBox;
+import freeworld.world.CachedBlockGetter;
 import freeworld.world.World;
 import freeworld.world.block.BlockType;
 import freeworld.world.chunk.ChunkPos;
@@ -28,6 +29,7 @@ import java.util.List;
 public final class MotionSystem implements EntitySystem {
     @Override
     public void process(World world, List<Entity> entities) {
+        final CachedBlockGetter blockGetter = new CachedBlockGetter(world);
         for (Entity entity : entities) {
             if (EntitySystem.hasAllComponents(entity,
                 AccelerationComponent.ID,
@@ -59,18 +61,16 @@ public final class MotionSystem implements EntitySystem {
                     final int x1 = (int) Math.ceil(range.maxX() + 1.0);
                     final int y1 = (int) Math.ceil(range.maxY() + 1.0);
                     final int z1 = (int) Math.ceil(range.maxZ() + 1.0);
+                    requestChunks(world, x0, y0, z0, x1, y1, z1);
                     for (int x = x0; x < x1; x++) {
                         for (int y = y0; y < y1; y++) {
                             for (int z = z0; z < z1; z++) {
-                                if (!world.isBlockLoaded(x, y, z)) {
-                                    world.getOrCreateChunk(
-                                        ChunkPos.absoluteToChunk(x),
-                                        ChunkPos.absoluteToChunk(y),
-                                        ChunkPos.absoluteToChunk(z)
-                                    );
+                                if (!blockGetter.isBlockLoaded(x, y, z)) {
+                                    // an unloaded block is solid until its chunk is generated, so that nothing falls through
+                                    boxes.add(AABBox.FULL_CUBE.move(x, y, z));
                                     continue;
                                 }
-                                final BlockType blockType = world.getBlockType(x, y, z);
+                                final BlockType blockType = blockGetter.getBlockType(x, y, z);
                                 if (blockType.air()) {
                                     continue;
                                 }
@@ -125,6 +125,24 @@ public final class MotionSystem implements EntitySystem {
         }
     }
 
+    /**
+     * Requests each unloaded chunk of the given range of blocks once, instead of once per block.
+     */
+    private static void requestChunks(World world, int x0, int y0, int z0, int x1, int y1, int z1) {
+        final int cx1 = ChunkPos.absoluteToChunk(x1 - 1);
+        final int cy1 = ChunkPos.absoluteToChunk(y1 - 1);
+        final int cz1 = ChunkPos.absoluteToChunk(z1 - 1);
+        for (int cx = ChunkPos.absoluteToChunk(x0); cx <= cx1; cx++) {
+            for (int cy = ChunkPos.absoluteToChunk(y0); cy <= cy1; cy++) {
+                for (int cz = ChunkPos.absoluteToChunk(z0); cz <= cz1; cz++) {
+                    if (!world.isChunkLoaded(cx, cy, cz)) {
+                        world.requestChunk(cx, cy, cz);
+                    }
+                }
+            }
+        }
+    }
+
     private AABBox computeBox(AABBox dimension, Vector3d position) {
         final double width = (dimension.maxX() - dimension.minX()) * 0.5;
         final double height = dimension.maxY() - dimension.minY();
@@ -0,0 +1,57 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.gen;
+
+/**
+ * The biomes, chosen by a low-frequency noise that also scales the height of the terrain.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public enum Biome {
+    PLAINS(0.7),
+    HILLS(1.4),
+    MOUNTAINS(Double.POSITIVE_INFINITY);
+
+    private static final double MIN_HEIGHT_SCALE = 0.3;
+    private static final double MAX_HEIGHT_SCALE = 2.0;
+    private final double maxHeightScale;
+
+    Biome(double maxHeightScale) {
+        this.maxHeightScale = maxHeightScale;
+    }
+
+    /**
+     * {@return the scale of the terrain height for the given selector noise}
+     * The scale changes continuously with the selector, so that there is no cliff between biomes.
+     *
+     * @param selector the selector noise, about in [-1, 1]
+     */
+    public static double heightScale(double selector) {
+        final double t = Math.clamp((selector + 0.5), 0.0, 1.0);
+        final double smooth = t * t * (3.0 - 2.0 * t);
+        return MIN_HEIGHT_SCALE + (MAX_HEIGHT_SCALE - MIN_HEIGHT_SCALE) * smooth;
+    }
+
+    /**
+     * {@return the biome with the given height scale}
+     *
+     * @param heightScale the height scale
+     */
+    public static Biome fromHeightScale(double heightScale) {
+        for (Biome biome : values()) {
+            if (heightScale < biome.maxHeightScale) {
+                return biome;
+            }
+        }
+        return MOUNTAINS;
+    }
+}
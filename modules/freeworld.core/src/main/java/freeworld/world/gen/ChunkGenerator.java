@@ -0,0 +1,39 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.gen;
+
+import freeworld.world.chunk.Chunk;
+
+/**
+ * Generates the terrain of chunks.
+ * <p>
+ * Implementations must be thread-safe: chunks are generated on several worker threads at once.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public interface ChunkGenerator {
+    /**
+     * Fills the blocks of the given newly created chunk.
+     *
+     * @param chunk the chunk, filled with air
+     */
+    void generate(Chunk chunk);
+
+    /**
+     * {@return the lowest y above which no block is generated in the given block column}
+     * This is a bound from the heightmap, for spawning and sky light, without generating any chunk.
+     *
+     * @param x the absolute x
+     * @param z the absolute z
+     */
+    int heightAt(int x, int z);
+}
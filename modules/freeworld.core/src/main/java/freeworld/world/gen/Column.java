@@ -0,0 +1,129 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.gen;
+
+import freeworld.world.chunk.Chunk;
+
+/**
+ * The data of a column of chunks, shared by all chunks at the same x and z: the height and the biome of each
+ * of its 32x32 block columns, at {@code [z * 32 + x]}.
+ * <p>
+ * A column is generated once, by the first thread that {@linkplain ColumnCache#get(int, int) gets} it;
+ * it must not be modified afterwards.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class Column {
+    public static final int AREA = Chunk.SIZE * Chunk.SIZE;
+    private final int x;
+    private final int z;
+    private final double[] heights = new double[AREA];
+    private final Biome[] biomes = new Biome[AREA];
+    private double minHeight;
+    private double maxHeight;
+    private volatile boolean generated = false;
+    /**
+     * Whether the {@link ColumnCache} got this column since its clock hand last passed it.
+     */
+    volatile boolean referenced = true;
+
+    Column(int x, int z) {
+        this.x = x;
+        this.z = z;
+    }
+
+    /**
+     * Generates this column if it is not yet.
+     *
+     * @param generator the column generator
+     */
+    void ensureGenerated(ColumnCache.Generator generator) {
+        if (generated) {
+            return;
+        }
+        synchronized (this) {
+            if (generated) {
+                return;
+            }
+            generator.generate(this);
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (double height : heights) {
+                min = Math.min(min, height);
+                max = Math.max(max, height);
+            }
+            minHeight = min;
+            maxHeight = max;
+            generated = true;
+        }
+    }
+
+    private static int index(int relativeX, int relativeZ) {
+        return relativeZ * Chunk.SIZE + relativeX;
+    }
+
+    /**
+     * {@return the height of the given block column}
+     *
+     * @param relativeX the x relative to this column
+     * @param relativeZ the z relative to this column
+     */
+    public double heightAt(int relativeX, int relativeZ) {
+        return heights[index(relativeX, relativeZ)];
+    }
+
+    /**
+     * {@return the biome of the given block column}
+     *
+     * @param relativeX the x relative to this column
+     * @param relativeZ the z relative to this column
+     */
+    public Biome biomeAt(int relativeX, int relativeZ) {
+        return biomes[index(relativeX, relativeZ)];
+    }
+
+    /**
+     * {@return the chunk x of this column}
+     */
+    public int x() {
+        return x;
+    }
+
+    /**
+     * {@return the chunk z of this column}
+     */
+    public int z() {
+        return z;
+    }
+
+    /**
+     * {@return the heights, to be filled while generating}
+     */
+    public double[] heights() {
+        return heights;
+    }
+
+    /**
+     * {@return the biomes, to be filled while generating}
+     */
+    public Biome[] biomes() {
+        return biomes;
+    }
+
+    public double minHeight() {
+        return minHeight;
+    }
+
+    public double maxHeight() {
+        return maxHeight;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.gen;
+
+import freeworld.util.ConcurrentLongMap;
+import freeworld.world.chunk.ChunkPos;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of {@link Column}s, evicting a column that was not used recently.
+ * <p>
+ * All vertical chunks of a column share its data, so a column is generated once however many of them are
+ * generated, even at the same time. Getting a cached column is lock-free; columns are only inserted and evicted
+ * under a lock. The eviction approximates LRU with a clock: a get marks its column referenced, and the clock hand
+ * evicts the first column it finds unreferenced, clearing the marks it passes.
+ * This class is thread-safe.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ColumnCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private final int capacity;
+    private final Generator generator;
+    private final ConcurrentLongMap<Column> columns;
+    /**
+     * The cached columns in insertion slots, guarded by the lock.
+     */
+    private final Column[] clock;
+    private final Object lock = new Object();
+    private int hand = 0;
+    private int clockSize = 0;
+    private final LongAdder hitCount = new LongAdder();
+    private long missCount = 0L;
+
+    /**
+     * Generates the data of a column.
+     */
+    @FunctionalInterface
+    public interface Generator {
+        /**
+         * Fills the {@linkplain Column#heights() heights} and the {@linkplain Column#biomes() biomes} of the given column.
+         *
+         * @param column the column
+         */
+        void generate(Column column);
+    }
+
+    /**
+     * Creates the column cache.
+     *
+     * @param capacity  the maximum count of columns kept, at least 1
+     * @param generator the column generator
+     */
+    public ColumnCache(int capacity, Generator generator) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(STR."capacity must be at least 1, got \{capacity}");
+        }
+        this.capacity = capacity;
+        this.generator = generator;
+        this.columns = new ConcurrentLongMap<>(capacity);
+        this.clock = new Column[capacity];
+    }
+
+    private static long key(int x, int z) {
+        return ChunkPos.pack(x, 0, z);
+    }
+
+    /**
+     * Puts the given column in the slot of an evicted one, or in a free slot. Must be called with the lock held.
+     */
+    private void insert(Column column) {
+        if (clockSize < capacity) {
+            clock[clockSize++] = column;
+            return;
+        }
+        while (clock[hand].referenced) {
+            clock[hand].referenced = false;
+            hand = (hand + 1) % capacity;
+        }
+        final Column evicted = clock[hand];
+        columns.remove(key(evicted.x(), evicted.z()));
+        clock[hand] = column;
+        hand = (hand + 1) % capacity;
+    }
+
+    /**
+     * {@return the generated column at the given position}
+     *
+     * @param x the chunk x
+     * @param z the chunk z
+     */
+    public Column get(int x, int z) {
+        final long key = key(x, z);
+        Column column = columns.get(key);
+        if (column != null) {
+            // avoid writing the shared flag when it is already set
+            if (!column.referenced) {
+                column.referenced = true;
+            }
+            hitCount.increment();
+        } else {
+            synchronized (lock) {
+                column = columns.get(key);
+                if (column == null) {
+                    column = new Column(x, z);
+                    insert(column);
+                    columns.put(key, column);
+                    missCount++;
+                } else {
+                    column.referenced = true;
+                    hitCount.increment();
+                }
+            }
+        }
+        // generated outside the lock of the cache; other threads needing this column wait for it
+        column.ensureGenerated(generator);
+        return column;
+    }
+
+    /**
+     * {@return the column containing the given block column}
+     *
+     * @param x the absolute x
+     * @param z the absolute z
+     */
+    public Column getByAbsolutePos(int x, int z) {
+        return get(ChunkPos.absoluteToChunk(x), ChunkPos.absoluteToChunk(z));
+    }
+
+    public int size() {
+        return columns.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * {@return the count of gets that found their column cached}
+     */
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * {@return the count of gets that created their column}
+     */
+    public long missCount() {
+        synchronized (lock) {
+            return missCount;
+        }
+    }
+
+    /**
+     * Drops all columns.
+     */
+    public void clear() {
+        synchronized (lock) {
+            columns.clear();
+            Arrays.fill(clock, null);
+            hand = 0;
+            clockSize = 0;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.gen;
+
+import freeworld.world.block.BlockType;
+import freeworld.world.block.BlockTypes;
+import freeworld.world.chunk.Chunk;
+import freeworld.world.chunk.ChunkPos;
+
+/**
+ * Generates a flat world: grass at y = -1, dirt below it down to y = -4, and stone below.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class FlatChunkGenerator implements ChunkGenerator {
+    @Override
+    public void generate(Chunk chunk) {
+        final BlockType bottom = terrainBlockType(chunk.fromY());
+        boolean uniform = true;
+        for (int by = 1; by < chunk.height(); by++) {
+            if (terrainBlockType(ChunkPos.relativeToAbsolute(chunk.y(), by)) != bottom) {
+                uniform = false;
+                break;
+            }
+        }
+        if (uniform) {
+            chunk.fill(bottom);
+            return;
+        }
+        for (int by = 0; by < chunk.height(); by++) {
+            final BlockType blockType = terrainBlockType(ChunkPos.relativeToAbsolute(chunk.y(), by));
+            if (blockType.air()) {
+                continue;
+            }
+            for (int bz = 0; bz < chunk.depth(); bz++) {
+                for (int bx = 0; bx < chunk.width(); bx++) {
+                    chunk.setBlockType(bx, by, bz, blockType);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int heightAt(int x, int z) {
+        return 0;
+    }
+
+    private static BlockType terrainBlockType(int absY) {
+        if (absY < -4) {
+            return BlockTypes.STONE;
+        } else if (absY < -1) {
+            return BlockTypes.DIRT;
+        } else if (absY == -1) {
+            return BlockTypes.GRASS_BLOCK;
+        }
+        return BlockTypes.AIR;
+    }
+}
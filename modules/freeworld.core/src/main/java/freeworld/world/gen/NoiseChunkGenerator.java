@@ -0,0 +1,224 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.gen;
+
+import freeworld.world.block.BlockType;
+import freeworld.world.block.BlockTypes;
+import freeworld.world.chunk.Chunk;
+import freeworld.world.chunk.ChunkPos;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates hilly terrain from a heightmap and a 3D density.
+ * <p>
+ * The heightmap and the {@linkplain Biome biomes} are generated once per column of chunks
+ * and kept in a {@link ColumnCache}, shared by all chunks of the column.
+ * <p>
+ * A block is solid where the density, the height of its column minus its y plus a 3D noise, is positive.
+ * The top solid block of a run is grass, with dirt below it, and stone deeper.
+ * <p>
+ * The noise is evaluated in batches: the heightmap over the whole 32x32 slab of the column,
+ * and the 3D noise on a lattice of one point every {@value #LATTICE_STEP} blocks, interpolated for the blocks.
+ * Chunks far above or below the surface are filled without evaluating the 3D noise.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class NoiseChunkGenerator implements ChunkGenerator {
+    private static final int SIZE = Chunk.SIZE;
+    private static final double BASE_HEIGHT = 0.0;
+    private static final double HEIGHT_AMPLITUDE = 40.0;
+    private static final double HEIGHT_FREQUENCY = 1.0 / 256.0;
+    private static final int HEIGHT_OCTAVES = 5;
+    private static final double BIOME_FREQUENCY = 1.0 / 1024.0;
+    /**
+     * The most that the 3D noise moves the surface by, in blocks.
+     */
+    private static final double DENSITY_AMPLITUDE = 12.0;
+    private static final double DENSITY_FREQUENCY = 1.0 / 48.0;
+    private static final int DENSITY_OCTAVES = 3;
+    /**
+     * The bound of the 3D noise relative to {@link #DENSITY_AMPLITUDE}, as Perlin noise slightly exceeds [-1, 1].
+     */
+    private static final double DENSITY_BOUND = DENSITY_AMPLITUDE * 1.1;
+    private static final int DIRT_DEPTH = 3;
+    private static final int LATTICE_STEP = 4;
+    private static final int LATTICE_SIZE = SIZE / LATTICE_STEP + 1;
+    /**
+     * The lattice reaches {@link #DIRT_DEPTH} + 1 blocks above the chunk, to find the grass and the dirt on its top.
+     */
+    private static final int LATTICE_HEIGHT = (SIZE + DIRT_DEPTH) / LATTICE_STEP + 2;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private final long seed;
+    private final PerlinNoise[] heightNoises = new PerlinNoise[HEIGHT_OCTAVES];
+    private final PerlinNoise[] densityNoises = new PerlinNoise[DENSITY_OCTAVES];
+    private final PerlinNoise biomeNoise;
+    private final ColumnCache columns = new ColumnCache(ColumnCache.DEFAULT_CAPACITY, this::generateColumn);
+
+    /**
+     * Arrays reused across the chunks generated on a thread.
+     */
+    private static final class Scratch {
+        private final double[] selectors = new double[Column.AREA];
+        private final double[] lattice = new double[LATTICE_SIZE * LATTICE_HEIGHT * LATTICE_SIZE];
+        private final double[] column = new double[LATTICE_HEIGHT];
+    }
+
+    public NoiseChunkGenerator(long seed) {
+        this.seed = seed;
+        final Random random = new Random(seed);
+        for (int i = 0; i < HEIGHT_OCTAVES; i++) {
+            heightNoises[i] = new PerlinNoise(random);
+        }
+        for (int i = 0; i < DENSITY_OCTAVES; i++) {
+            densityNoises[i] = new PerlinNoise(random);
+        }
+        this.biomeNoise = new PerlinNoise(random);
+    }
+
+    @Override
+    public void generate(Chunk chunk) {
+        final Column column = columns.get(chunk.x(), chunk.z());
+        final double minHeight = column.minHeight();
+        final double maxHeight = column.maxHeight();
+        if (chunk.fromY() >= maxHeight + DENSITY_BOUND) {
+            return;
+        }
+        if (chunk.toY() + DIRT_DEPTH < minHeight - DENSITY_BOUND) {
+            chunk.fill(BlockTypes.STONE);
+            return;
+        }
+
+        final Scratch scratch = SCRATCH.get();
+        final double[] lattice = scratch.lattice;
+        fillLattice(lattice, chunk.fromX(), chunk.fromY(), chunk.fromZ());
+        final double[] heights = column.heights();
+        final double[] densities = scratch.column;
+        // high enough for the depth to pass DIRT_DEPTH before the top row of the chunk
+        final int top = SIZE + DIRT_DEPTH;
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                interpolateColumn(lattice, x, z, densities);
+                final double height = heights[z * SIZE + x];
+                // the count of solid blocks right above, capped
+                int depth = 0;
+                for (int y = top; y >= 0; y--) {
+                    final int i = y / LATTICE_STEP;
+                    final double t = (double) (y % LATTICE_STEP) / LATTICE_STEP;
+                    final double noise = densities[i] + t * (densities[i + 1] - densities[i]);
+                    final double density = height - (chunk.fromY() + y) + noise;
+                    if (density <= 0.0) {
+                        depth = 0;
+                        continue;
+                    }
+                    if (y < SIZE) {
+                        final BlockType blockType;
+                        if (depth == 0) {
+                            blockType = BlockTypes.GRASS_BLOCK;
+                        } else if (depth <= DIRT_DEPTH) {
+                            blockType = BlockTypes.DIRT;
+                        } else {
+                            blockType = BlockTypes.STONE;
+                        }
+                        chunk.setBlockType(x, y, z, blockType);
+                    }
+                    if (depth <= DIRT_DEPTH) {
+                        depth++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void generateColumn(Column column) {
+        final double[] heights = column.heights();
+        final Biome[] biomes = column.biomes();
+        final double fromX = column.x() * SIZE;
+        final double fromZ = column.z() * SIZE;
+        Arrays.fill(heights, 0.0);
+        double frequency = HEIGHT_FREQUENCY;
+        double amplitude = 1.0;
+        double total = 0.0;
+        for (PerlinNoise noise : heightNoises) {
+            noise.add2D(heights, fromX * frequency, fromZ * frequency, frequency, SIZE, SIZE, amplitude);
+            total += amplitude;
+            frequency *= 2.0;
+            amplitude *= 0.5;
+        }
+        final double[] selectors = SCRATCH.get().selectors;
+        Arrays.fill(selectors, 0.0);
+        biomeNoise.add2D(selectors, fromX * BIOME_FREQUENCY, fromZ * BIOME_FREQUENCY, BIOME_FREQUENCY, SIZE, SIZE, 1.0);
+        final double scale = HEIGHT_AMPLITUDE / total;
+        for (int i = 0; i < Column.AREA; i++) {
+            final double heightScale = Biome.heightScale(selectors[i]);
+            heights[i] = BASE_HEIGHT + heights[i] * scale * heightScale;
+            biomes[i] = Biome.fromHeightScale(heightScale);
+        }
+    }
+
+    private void fillLattice(double[] lattice, int fromX, int fromY, int fromZ) {
+        Arrays.fill(lattice, 0.0);
+        double frequency = DENSITY_FREQUENCY;
+        double amplitude = 1.0;
+        double total = 0.0;
+        for (PerlinNoise noise : densityNoises) {
+            noise.add3D(lattice,
+                fromX * frequency, fromY * frequency, fromZ * frequency,
+                LATTICE_STEP * frequency,
+                LATTICE_SIZE, LATTICE_HEIGHT, LATTICE_SIZE,
+                amplitude);
+            total += amplitude;
+            frequency *= 2.0;
+            amplitude *= 0.5;
+        }
+        final double scale = DENSITY_AMPLITUDE / total;
+        for (int i = 0; i < lattice.length; i++) {
+            lattice[i] *= scale;
+        }
+    }
+
+    /**
+     * Interpolates the lattice on the x- and z-axes at the given column, at each lattice point on the y-axis.
+     */
+    private static void interpolateColumn(double[] lattice, int x, int z, double[] column) {
+        final int x0 = x / LATTICE_STEP;
+        final int z0 = z / LATTICE_STEP;
+        final double tx = (double) (x % LATTICE_STEP) / LATTICE_STEP;
+        final double tz = (double) (z % LATTICE_STEP) / LATTICE_STEP;
+        for (int y = 0; y < LATTICE_HEIGHT; y++) {
+            final int base = (y * LATTICE_SIZE + z0) * LATTICE_SIZE + x0;
+            final double v00 = lattice[base];
+            final double v10 = lattice[base + 1];
+            final double v01 = lattice[base + LATTICE_SIZE];
+            final double v11 = lattice[base + LATTICE_SIZE + 1];
+            final double v0 = v00 + tx * (v10 - v00);
+            final double v1 = v01 + tx * (v11 - v01);
+            column[y] = v0 + tz * (v1 - v0);
+        }
+    }
+
+    @Override
+    public int heightAt(int x, int z) {
+        final Column column = columns.getByAbsolutePos(x, z);
+        final double height = column.heightAt(ChunkPos.absoluteToRelative(x), ChunkPos.absoluteToRelative(z));
+        return (int) Math.ceil(height + DENSITY_BOUND);
+    }
+
+    public ColumnCache columns() {
+        return columns;
+    }
+
+    public long seed() {
+        return seed;
+    }
+}
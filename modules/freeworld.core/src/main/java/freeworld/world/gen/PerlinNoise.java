@@ -0,0 +1,149 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.gen;
+
+import java.util.Random;
+
+/**
+ * Improved Perlin noise, evaluated in batches over regular grids.
+ * <p>
+ * The batch methods add the noise to the values of an array in order,
+ * so that several octaves accumulate into one array without any temporary one.
+ * Instances are immutable and thread-safe.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class PerlinNoise {
+    private final int[] permutation = new int[512];
+    private final double offsetX;
+    private final double offsetY;
+    private final double offsetZ;
+
+    public PerlinNoise(Random random) {
+        this.offsetX = random.nextDouble() * 256.0;
+        this.offsetY = random.nextDouble() * 256.0;
+        this.offsetZ = random.nextDouble() * 256.0;
+        for (int i = 0; i < 256; i++) {
+            permutation[i] = i;
+        }
+        for (int i = 255; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final int t = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = t;
+        }
+        System.arraycopy(permutation, 0, permutation, 256, 256);
+    }
+
+    /**
+     * Adds the noise at the points of a 2D grid to the given values, at {@code [z * width + x]}.
+     *
+     * @param values    the values
+     * @param originX   the x of the first point
+     * @param originZ   the z of the first point
+     * @param step      the distance between points
+     * @param width     the count of points on the x-axis
+     * @param depth     the count of points on the z-axis
+     * @param amplitude the factor applied to the noise
+     */
+    public void add2D(double[] values, double originX, double originZ, double step, int width, int depth, double amplitude) {
+        for (int z = 0, i = 0; z < depth; z++) {
+            final double pz = originZ + z * step;
+            for (int x = 0; x < width; x++, i++) {
+                values[i] += amplitude * sample(originX + x * step, 0.0, pz);
+            }
+        }
+    }
+
+    /**
+     * Adds the noise at the points of a 3D grid to the given values, at {@code [(y * depth + z) * width + x]}.
+     *
+     * @param values    the values
+     * @param originX   the x of the first point
+     * @param originY   the y of the first point
+     * @param originZ   the z of the first point
+     * @param step      the distance between points
+     * @param width     the count of points on the x-axis
+     * @param height    the count of points on the y-axis
+     * @param depth     the count of points on the z-axis
+     * @param amplitude the factor applied to the noise
+     */
+    public void add3D(double[] values,
+                      double originX, double originY, double originZ,
+                      double step,
+                      int width, int height, int depth,
+                      double amplitude) {
+        for (int y = 0, i = 0; y < height; y++) {
+            final double py = originY + y * step;
+            for (int z = 0; z < depth; z++) {
+                final double pz = originZ + z * step;
+                for (int x = 0; x < width; x++, i++) {
+                    values[i] += amplitude * sample(originX + x * step, py, pz);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@return the noise at the given point, about in [-1, 1]}
+     *
+     * @param x the x
+     * @param y the y
+     * @param z the z
+     */
+    public double sample(double x, double y, double z) {
+        x += offsetX;
+        y += offsetY;
+        z += offsetZ;
+        final double floorX = Math.floor(x);
+        final double floorY = Math.floor(y);
+        final double floorZ = Math.floor(z);
+        final int cx = (int) floorX & 255;
+        final int cy = (int) floorY & 255;
+        final int cz = (int) floorZ & 255;
+        x -= floorX;
+        y -= floorY;
+        z -= floorZ;
+        final double u = fade(x);
+        final double v = fade(y);
+        final double w = fade(z);
+        final int[] p = permutation;
+        final int a = p[cx] + cy;
+        final int aa = p[a] + cz;
+        final int ab = p[a + 1] + cz;
+        final int b = p[cx + 1] + cy;
+        final int ba = p[b] + cz;
+        final int bb = p[b + 1] + cz;
+        return lerp(w,
+            lerp(v,
+                lerp(u, grad(p[aa], x, y, z), grad(p[ba], x - 1, y, z)),
+                lerp(u, grad(p[ab], x, y - 1, z), grad(p[bb], x - 1, y - 1, z))),
+            lerp(v,
+                lerp(u, grad(p[aa + 1], x, y, z - 1), grad(p[ba + 1], x - 1, y, z - 1)),
+                lerp(u, grad(p[ab + 1], x, y - 1, z - 1), grad(p[bb + 1], x - 1, y - 1, z - 1))));
+    }
+
+    private static double fade(double t) {
+        return t * t * t * (t * (t * 6.0 - 15.0) + 10.0);
+    }
+
+    private static double lerp(double t, double a, double b) {
+        return a + t * (b - a);
+    }
+
+    private static double grad(int hash, double x, double y, double z) {
+        final int h = hash & 15;
+        final double u = h < 8 ? x : y;
+        final double v = h < 4 ? y : (h == 12 || h == 14) ? x : z;
+        return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.storage;
+
+import freeworld.core.registry.BuiltinRegistries;
+import freeworld.world.block.BlockType;
+import freeworld.world.block.BlockTypes;
+import freeworld.world.chunk.Chunk;
+import freeworld.world.chunk.PalettedStorage;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes chunks to the payloads stored in {@link RegionFile}s, and decodes them back.
+ * <p>
+ * A payload is the length of the uncompressed data, followed by the data compressed with deflate.
+ * The data is the format version followed by the {@linkplain PalettedStorage#encode encoded}
+ * block storage, whose palette is stored as raw IDs of block types.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkCodec {
+    public static final byte FORMAT_VERSION = 1;
+    private static final ValueLayout.OfInt INT_LE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    private ChunkCodec() {
+    }
+
+    /**
+     * Encodes the given blocks of a chunk.
+     *
+     * @param blocks the blocks
+     * @return the payload
+     */
+    public static byte[] encode(PalettedStorage blocks) {
+        final int rawLength = Math.toIntExact(Byte.BYTES + blocks.encodedByteSize());
+        final byte[] raw = new byte[rawLength];
+        final MemorySegment segment = MemorySegment.ofArray(raw);
+        segment.set(ValueLayout.JAVA_BYTE, 0, FORMAT_VERSION);
+        blocks.encode(segment, Byte.BYTES, BuiltinRegistries.BLOCK_TYPE::getRawId);
+
+        final Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] payload = new byte[Integer.BYTES + rawLength / 2 + 64];
+        int length = Integer.BYTES;
+        while (!deflater.finished()) {
+            if (length == payload.length) {
+                payload = Arrays.copyOf(payload, payload.length * 2);
+            }
+            length += deflater.deflate(payload, length, payload.length - length);
+        }
+        MemorySegment.ofArray(payload).set(INT_LE, 0, rawLength);
+        return Arrays.copyOf(payload, length);
+    }
+
+    /**
+     * Decodes the given payload into the blocks of the given chunk.
+     * The compressed data is read in place, which can be a mapped file.
+     *
+     * @param payload the payload
+     * @param chunk   the chunk
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    public static void decode(MemorySegment payload, Chunk chunk) {
+        final int rawLength = payload.get(INT_LE, 0);
+        if (rawLength <= Byte.BYTES) {
+            throw new IllegalArgumentException(STR."Malformed chunk data length \{rawLength}");
+        }
+        byte[] raw = BUFFER.get();
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+            BUFFER.set(raw);
+        }
+        final Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(payload.asSlice(Integer.BYTES).asByteBuffer());
+        try {
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                final int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IllegalArgumentException(STR."Truncated chunk data: \{length} of \{rawLength} bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed compressed chunk data", e);
+        }
+        final MemorySegment segment = MemorySegment.ofArray(raw).asSlice(0, rawLength);
+        final byte version = segment.get(ValueLayout.JAVA_BYTE, 0);
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException(STR."Unsupported chunk format version \{version}");
+        }
+        chunk.blocks().decode(segment, Byte.BYTES, ChunkCodec::blockType);
+    }
+
+    private static BlockType blockType(int rawId) {
+        final BlockType blockType = BuiltinRegistries.BLOCK_TYPE.getByRawId(rawId);
+        return blockType != null ? blockType : BlockTypes.AIR;
+    }
+}
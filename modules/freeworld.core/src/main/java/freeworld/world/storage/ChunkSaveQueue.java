@@ -0,0 +1,331 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.storage;
+
+import freeworld.util.ConcurrentLongMap;
+import freeworld.util.Logging;
+import freeworld.world.chunk.ChunkPos;
+import freeworld.world.chunk.PalettedStorage;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes chunks to a {@link WorldStorage} on a background thread.
+ * <p>
+ * The tick thread {@linkplain #submit(Snapshot) submits} copies of the blocks of modified chunks, and never waits
+ * for the disk. A chunk submitted again before it is written replaces its queued copy, so that repeated edits
+ * are written once. The writer takes all queued chunks at once and writes them a region file at a time.
+ * Queued chunks stay visible to {@link #pending(int, int, int)} until they are written,
+ * so that a chunk loaded again meanwhile is read with its latest blocks.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ChunkSaveQueue implements AutoCloseable {
+    private static final Logger logger = Logging.caller();
+    /**
+     * The delay, in milliseconds, before writing again after a failed write.
+     */
+    private static final long RETRY_DELAY = 1000L;
+    /**
+     * The count of failed writes after which {@link #flush()} stops waiting.
+     */
+    private static final int MAX_FLUSH_RETRIES = 3;
+    private static final long RATE_WINDOW = TimeUnit.SECONDS.toNanos(1L);
+    private final WorldStorage storage;
+    /**
+     * The queued chunks by {@linkplain ChunkPos#pack(int, int, int) packed position}, modified with the lock held.
+     */
+    private final ConcurrentLongMap<Snapshot> queue = new ConcurrentLongMap<>();
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private final Thread writer;
+    private boolean writing = false;
+    private boolean closed = false;
+    private long submittedCount = 0L;
+    private long coalescedCount = 0L;
+    private long failedWriteCount = 0L;
+    private volatile long writtenCount = 0L;
+    private volatile long writtenBytes = 0L;
+    private long windowStart = System.nanoTime();
+    private long windowBytes = 0L;
+    private long lastWindowBytes = 0L;
+
+    /**
+     * A copy of the blocks of a chunk, which is not modified after it is submitted.
+     *
+     * @param x      the chunk x
+     * @param y      the chunk y
+     * @param z      the chunk z
+     * @param blocks the blocks
+     */
+    public record Snapshot(int x, int y, int z, PalettedStorage blocks) {
+    }
+
+    /**
+     * Creates the queue and starts its writer.
+     *
+     * @param storage the storage to write to
+     */
+    public ChunkSaveQueue(WorldStorage storage) {
+        this.storage = storage;
+        this.writer = Thread.ofPlatform().name("ChunkSaver").daemon().start(this::run);
+    }
+
+    /**
+     * Queues the given chunk to be written, replacing its queued copy if there is one.
+     *
+     * @param snapshot the copy of the chunk
+     * @throws IllegalStateException if this queue is closed
+     */
+    public void submit(Snapshot snapshot) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException(STR."Cannot save chunk \{snapshot.x()}, \{snapshot.y()}, \{snapshot.z()}: save queue closed");
+            }
+            if (queue.put(ChunkPos.pack(snapshot.x(), snapshot.y(), snapshot.z()), snapshot) != null) {
+                coalescedCount++;
+            }
+            submittedCount++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@return the queued copy of the given chunk, or {@code null} if it is not queued}
+     * A chunk being written is still queued.
+     *
+     * @param x the chunk x
+     * @param y the chunk y
+     * @param z the chunk z
+     */
+    public Snapshot pending(int x, int y, int z) {
+        return queue.get(ChunkPos.pack(x, y, z));
+    }
+
+    private void run() {
+        while (true) {
+            final List<Snapshot> batch;
+            final boolean closing;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch = queue.values();
+                writing = true;
+                closing = closed;
+            } finally {
+                lock.unlock();
+            }
+
+            final List<Snapshot> written = storage.writeChunks(batch);
+            final boolean failed = written.size() < batch.size();
+
+            lock.lock();
+            try {
+                for (Snapshot snapshot : written) {
+                    // a chunk submitted again while writing stays queued
+                    queue.remove(ChunkPos.pack(snapshot.x(), snapshot.y(), snapshot.z()), snapshot);
+                }
+                if (failed) {
+                    failedWriteCount++;
+                }
+                if (failed && closing) {
+                    for (Snapshot snapshot : batch) {
+                        if (queue.remove(ChunkPos.pack(snapshot.x(), snapshot.y(), snapshot.z()), snapshot)) {
+                            logger.error("Discarding chunk {}, {}, {} that failed to save", snapshot.x(), snapshot.y(), snapshot.z());
+                        }
+                    }
+                }
+                writing = false;
+                idle.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if (failed && !closing) {
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the given written chunks for the metrics. Called on the writer thread, by {@link WorldStorage#writeChunks}.
+     *
+     * @param chunkCount the count of chunks
+     * @param bytes      the count of bytes
+     */
+    void recordWritten(int chunkCount, long bytes) {
+        writtenCount += chunkCount;
+        writtenBytes += bytes;
+        lock.lock();
+        try {
+            advanceRateWindow(System.nanoTime());
+            windowBytes += bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the current rate window if a second has elapsed since it started. Must be called with the lock held.
+     *
+     * @param now the current {@link System#nanoTime()}
+     */
+    private void advanceRateWindow(long now) {
+        final long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW) {
+            // windows after the one that just ended had no writes
+            lastWindowBytes = elapsed < 2 * RATE_WINDOW ? windowBytes : 0L;
+            windowStart = now - elapsed % RATE_WINDOW;
+            windowBytes = 0L;
+        }
+    }
+
+    /**
+     * {@return the count of chunks waiting to be written, including the chunks being written}
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * {@return the count of chunks submitted}
+     */
+    public long submittedCount() {
+        lock.lock();
+        try {
+            return submittedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@return the count of submitted chunks that replaced a queued copy instead of being written on their own}
+     */
+    public long coalescedCount() {
+        lock.lock();
+        try {
+            return coalescedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@return the count of writes that failed to write some of their chunks}
+     */
+    public long failedWriteCount() {
+        lock.lock();
+        try {
+            return failedWriteCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@return the count of chunks written}
+     */
+    public long writtenCount() {
+        return writtenCount;
+    }
+
+    /**
+     * {@return the count of compressed bytes written}
+     */
+    public long writtenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * {@return the count of bytes written during the last whole second}
+     * The rate drops to 0 a second after the writes stop.
+     */
+    public long bytesPerSecond() {
+        lock.lock();
+        try {
+            advanceRateWindow(System.nanoTime());
+            return lastWindowBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the queued chunks are written. Failed writes are retried meanwhile,
+     * until {@value #MAX_FLUSH_RETRIES} of them failed; the chunks left are then logged, and stay queued.
+     *
+     * @return {@code true} if all chunks queued were written
+     */
+    public boolean flush() {
+        lock.lock();
+        try {
+            final long maxFailedWrites = failedWriteCount + MAX_FLUSH_RETRIES;
+            while (!queue.isEmpty() || writing) {
+                if (failedWriteCount >= maxFailedWrites) {
+                    for (Snapshot snapshot : queue.values()) {
+                        logger.error("Gave up flushing chunk {}, {}, {} after {} failed writes",
+                            snapshot.x(), snapshot.y(), snapshot.z(), MAX_FLUSH_RETRIES);
+                    }
+                    return false;
+                }
+                idle.awaitUninterruptibly();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the queued chunks and stops the writer. Chunks that still fail to be written are logged and discarded.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.storage;
+
+import freeworld.util.Logging;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * A file storing the chunks of a region of {@value #SIZE}x{@value #SIZE}x{@value #SIZE} chunks.
+ * <p>
+ * The file is split into sectors of {@value #SECTOR_BYTES} bytes. The first sector is the table of the chunks:
+ * for each chunk, the index of its first sector and the length of its payload in bytes, as little-endian ints;
+ * a first sector of 0 means the chunk is absent. The payload of a chunk takes consecutive sectors,
+ * allocated first-fit among the sectors that no chunk uses. Payloads are never overwritten in place,
+ * so that the file stays consistent if the game crashes while {@linkplain #write(List) writing}.
+ * <p>
+ * The file is mapped into memory, and payloads are read from the mapping without copying.
+ * This class is thread-safe; reads run concurrently with each other.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class RegionFile implements AutoCloseable {
+    private static final Logger logger = Logging.caller();
+    /**
+     * The count of chunks on each axis of a region.
+     */
+    public static final int SIZE = 8;
+    public static final int CHUNK_COUNT = SIZE * SIZE * SIZE;
+    public static final int SECTOR_BYTES = 4096;
+    private static final int ENTRY_BYTES = 2 * Integer.BYTES;
+    private static final int HEADER_SECTORS = (CHUNK_COUNT * ENTRY_BYTES + SECTOR_BYTES - 1) / SECTOR_BYTES;
+    private static final ValueLayout.OfInt INT_LE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private final Path path;
+    private final FileChannel channel;
+    private final int[] sectors = new int[CHUNK_COUNT];
+    private final int[] lengths = new int[CHUNK_COUNT];
+    private final BitSet usedSectors = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private MemorySegment mapping;
+    private int sectorCount;
+
+    private RegionFile(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        if (channel.size() < (long) HEADER_SECTORS * SECTOR_BYTES) {
+            channel.write(ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES), 0L);
+        }
+        sectorCount = Math.toIntExact((channel.size() + SECTOR_BYTES - 1) / SECTOR_BYTES);
+        remap();
+        loadTable();
+    }
+
+    /**
+     * Loads the table of the chunks, dropping the entries that cannot be valid after a crash or a truncation:
+     * entries pointing into the table or past the end of the file, and entries whose sectors overlap
+     * the sectors of a previous entry. Dropped entries are cleared in the file, so that the allocator
+     * never hands out their sectors while the file still points to them.
+     */
+    private void loadTable() throws IOException {
+        usedSectors.set(0, HEADER_SECTORS);
+        boolean dropped = false;
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            final int sector = mapping.get(INT_LE, (long) i * ENTRY_BYTES);
+            final int length = mapping.get(INT_LE, (long) i * ENTRY_BYTES + Integer.BYTES);
+            if (sector == 0 && length == 0) {
+                continue;
+            }
+            final String problem;
+            if (sector < HEADER_SECTORS || length <= 0) {
+                problem = "it is malformed";
+            } else if ((long) sector * SECTOR_BYTES + length > mapping.byteSize()) {
+                problem = "it points past the end of the file";
+            } else {
+                final int nextUsed = usedSectors.nextSetBit(sector);
+                problem = nextUsed != -1 && nextUsed < sector + sectorsOf(length) ?
+                    "it overlaps another entry" :
+                    null;
+            }
+            if (problem != null) {
+                logger.warn("Dropping entry {} (sector {}, length {}) of region file {}, as {}", i, sector, length, path, problem);
+                writeEntry(i, 0, 0);
+                dropped = true;
+                continue;
+            }
+            sectors[i] = sector;
+            lengths[i] = length;
+            usedSectors.set(sector, sector + sectorsOf(length));
+        }
+        if (dropped) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Opens the given region file, creating it if it does not exist.
+     *
+     * @param path the path of the file
+     * @return the region file
+     * @throws IOException if an I/O error occurs
+     */
+    public static RegionFile open(Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            return new RegionFile(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * {@return the index of the given chunk in its region}
+     *
+     * @param x the chunk x
+     * @param y the chunk y
+     * @param z the chunk z
+     */
+    public static int index(int x, int y, int z) {
+        final int mask = SIZE - 1;
+        return (((y & mask) * SIZE) + (z & mask)) * SIZE + (x & mask);
+    }
+
+    private static int sectorsOf(int length) {
+        return (length + SECTOR_BYTES - 1) / SECTOR_BYTES;
+    }
+
+    private void remap() throws IOException {
+        // an automatic arena, as Inflater rejects buffers of closeable shared arenas;
+        // the old mapping is unmapped once no read uses it any more
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size(), Arena.ofAuto());
+    }
+
+    /**
+     * Reads the payload of the given chunk.
+     * The payload is only valid inside the reader, which may run concurrently with other reads.
+     *
+     * @param index  the {@linkplain #index(int, int, int) index} of the chunk
+     * @param reader the function reading the payload
+     * @param <T>    the type of the result
+     * @return the result of the reader, or {@code null} if the chunk is absent
+     */
+    public <T> T read(int index, Function<MemorySegment, T> reader) {
+        lock.readLock().lock();
+        try {
+            final int sector = sectors[index];
+            if (sector == 0) {
+                return null;
+            }
+            return reader.apply(mapping.asSlice((long) sector * SECTOR_BYTES, lengths[index]));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A payload to write for the chunk at the given {@linkplain #index(int, int, int) index}.
+     *
+     * @param index   the index of the chunk
+     * @param payload the payload
+     */
+    public record Write(int index, byte[] payload) {
+    }
+
+    /**
+     * Writes the payload of the given chunk, replacing the previous one.
+     *
+     * @param index   the {@linkplain #index(int, int, int) index} of the chunk
+     * @param payload the payload
+     * @throws IOException if an I/O error occurs
+     * @see #write(List)
+     */
+    public void write(int index, byte[] payload) throws IOException {
+        write(List.of(new Write(index, payload)));
+    }
+
+    /**
+     * Writes the given payloads, replacing the previous ones.
+     * <p>
+     * The payloads are written to free sectors and flushed to the storage device before the table points to them,
+     * and the previous sectors are freed only once the table is flushed as well. A crash at any point
+     * therefore leaves each chunk with either its previous or its new payload, never a torn one;
+     * the sectors of an interrupted write are simply free again when the file is opened.
+     *
+     * @param writes the payloads to write; a later payload of the same chunk wins
+     * @return the count of bytes written, not counting the table
+     * @throws IOException if an I/O error occurs
+     */
+    public long write(List<Write> writes) throws IOException {
+        if (writes.isEmpty()) {
+            return 0L;
+        }
+        lock.writeLock().lock();
+        try {
+            final int size = writes.size();
+            final int[] newSectors = new int[size];
+            long bytes = 0L;
+            for (int i = 0; i < size; i++) {
+                final byte[] payload = writes.get(i).payload();
+                if (payload.length == 0) {
+                    throw new IllegalArgumentException(STR."Empty payload for chunk \{writes.get(i).index()}");
+                }
+                final int count = sectorsOf(payload.length);
+                final int sector = allocate(count);
+                usedSectors.set(sector, sector + count);
+                if (sector + count > sectorCount) {
+                    sectorCount = sector + count;
+                }
+                channel.write(ByteBuffer.wrap(payload), (long) sector * SECTOR_BYTES);
+                newSectors[i] = sector;
+                bytes += payload.length;
+            }
+            channel.force(false);
+
+            final BitSet freed = new BitSet();
+            for (int i = 0; i < size; i++) {
+                final Write write = writes.get(i);
+                final int oldSector = sectors[write.index()];
+                if (oldSector != 0) {
+                    freed.set(oldSector, oldSector + sectorsOf(lengths[write.index()]));
+                }
+                writeEntry(write.index(), newSectors[i], write.payload().length);
+            }
+            channel.force(false);
+            usedSectors.andNot(freed);
+
+            if (channel.size() > mapping.byteSize()) {
+                remap();
+            }
+            return bytes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@return the first sector of a run of the given count of free sectors}
+     */
+    private int allocate(int count) {
+        int start = usedSectors.nextClearBit(HEADER_SECTORS);
+        while (start < sectorCount) {
+            final int end = usedSectors.nextSetBit(start);
+            if (end == -1 || end - start >= count) {
+                return start;
+            }
+            start = usedSectors.nextClearBit(end);
+        }
+        return start;
+    }
+
+    private void writeEntry(int index, int sector, int length) throws IOException {
+        final ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putInt(sector).putInt(length).flip();
+        channel.write(entry, (long) index * ENTRY_BYTES);
+        sectors[index] = sector;
+        lengths[index] = length;
+    }
+
+    /**
+     * {@return {@code true} if the given chunk is stored}
+     *
+     * @param index the {@linkplain #index(int, int, int) index} of the chunk
+     */
+    public boolean contains(int index) {
+        lock.readLock().lock();
+        try {
+            return sectors[index] != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes the written data to the storage device.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            mapping = MemorySegment.NULL;
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.storage;
+
+import freeworld.util.ConcurrentLongMap;
+import freeworld.util.Logging;
+import freeworld.world.chunk.Chunk;
+import freeworld.world.chunk.ChunkPos;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the chunks of a world in {@link RegionFile}s under {@code <directory>/region}.
+ * <p>
+ * The region files are opened when first needed and stay open until this storage is closed;
+ * reading a chunk never creates a file. Chunks are {@linkplain #saveChunk(Chunk) saved} in the background
+ * by a {@link ChunkSaveQueue}, and read back from it until they are written. This class is thread-safe.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class WorldStorage implements AutoCloseable {
+    private static final Logger logger = Logging.caller();
+    private final Path directory;
+    private final Path regionDirectory;
+    private final ConcurrentLongMap<RegionFile> regions = new ConcurrentLongMap<>();
+    private final ChunkSaveQueue saveQueue;
+    private volatile boolean closed = false;
+
+    public WorldStorage(Path directory) {
+        this.directory = directory;
+        this.regionDirectory = directory.resolve("region");
+        this.saveQueue = new ChunkSaveQueue(this);
+    }
+
+    private static long regionKey(int x, int y, int z) {
+        return ChunkPos.pack(
+            Math.floorDiv(x, RegionFile.SIZE),
+            Math.floorDiv(y, RegionFile.SIZE),
+            Math.floorDiv(z, RegionFile.SIZE)
+        );
+    }
+
+    private Path regionPath(int x, int y, int z) {
+        return regionDirectory.resolve(STR."r.\{Math.floorDiv(x, RegionFile.SIZE)}.\{Math.floorDiv(y, RegionFile.SIZE)}.\{Math.floorDiv(z, RegionFile.SIZE)}.bin");
+    }
+
+    /**
+     * {@return the region file of the given chunk, or {@code null} if it does not exist and is not to be created}
+     */
+    private RegionFile region(int x, int y, int z, boolean create) throws IOException {
+        final long key = regionKey(x, y, z);
+        final RegionFile region = regions.get(key);
+        if (region != null) {
+            return region;
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IOException(STR."World storage \{directory} is closed");
+            }
+            final RegionFile existing = regions.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            final Path path = regionPath(x, y, z);
+            if (!create && !Files.exists(path)) {
+                return null;
+            }
+            Files.createDirectories(regionDirectory);
+            final RegionFile opened = RegionFile.open(path);
+            regions.put(key, opened);
+            return opened;
+        }
+    }
+
+    /**
+     * Reads the stored blocks of the given chunk into it.
+     * A chunk that cannot be read is logged and reported as absent, so that it is generated again.
+     *
+     * @param chunk the chunk
+     * @return {@code true} if the chunk was stored and is read
+     */
+    public boolean readChunk(Chunk chunk) {
+        final ChunkSaveQueue.Snapshot pending = saveQueue.pending(chunk.x(), chunk.y(), chunk.z());
+        if (pending != null) {
+            chunk.blocks().copyFrom(pending.blocks());
+            return true;
+        }
+        try {
+            final RegionFile region = region(chunk.x(), chunk.y(), chunk.z(), false);
+            if (region == null) {
+                return false;
+            }
+            final Boolean read = region.read(RegionFile.index(chunk.x(), chunk.y(), chunk.z()), payload -> {
+                ChunkCodec.decode(payload, chunk);
+                return Boolean.TRUE;
+            });
+            return read != null;
+        } catch (IOException | RuntimeException e) {
+            logger.error(STR."Failed to read chunk \{chunk.x()}, \{chunk.y()}, \{chunk.z()}", e);
+            return false;
+        }
+    }
+
+    /**
+     * Queues a copy of the blocks of the given chunk to be written in the background.
+     * The copy is taken now, so the chunk may be modified right after.
+     *
+     * @param chunk the chunk
+     * @see ChunkSaveQueue#submit(ChunkSaveQueue.Snapshot)
+     */
+    public void saveChunk(Chunk chunk) {
+        saveQueue.submit(new ChunkSaveQueue.Snapshot(chunk.x(), chunk.y(), chunk.z(), chunk.blocks().copy()));
+    }
+
+    /**
+     * Writes the given chunks, a region file at a time. Called on the writer thread of the save queue.
+     * A region that fails to be written is logged, and its chunks are left out of the result.
+     *
+     * @param snapshots the chunks
+     * @return the chunks written
+     */
+    List<ChunkSaveQueue.Snapshot> writeChunks(List<ChunkSaveQueue.Snapshot> snapshots) {
+        final ConcurrentLongMap<List<ChunkSaveQueue.Snapshot>> byRegion = new ConcurrentLongMap<>();
+        for (ChunkSaveQueue.Snapshot snapshot : snapshots) {
+            byRegion.computeIfAbsent(regionKey(snapshot.x(), snapshot.y(), snapshot.z()), _ -> new ArrayList<>())
+                .add(snapshot);
+        }
+        final List<ChunkSaveQueue.Snapshot> written = new ArrayList<>(snapshots.size());
+        for (List<ChunkSaveQueue.Snapshot> batch : byRegion.values()) {
+            final ChunkSaveQueue.Snapshot first = batch.getFirst();
+            try {
+                final List<RegionFile.Write> writes = new ArrayList<>(batch.size());
+                for (ChunkSaveQueue.Snapshot snapshot : batch) {
+                    writes.add(new RegionFile.Write(
+                        RegionFile.index(snapshot.x(), snapshot.y(), snapshot.z()),
+                        ChunkCodec.encode(snapshot.blocks())
+                    ));
+                }
+                final long bytes = region(first.x(), first.y(), first.z(), true).write(writes);
+                saveQueue.recordWritten(batch.size(), bytes);
+                written.addAll(batch);
+            } catch (IOException | RuntimeException e) {
+                logger.error(STR."Failed to save \{batch.size()} chunks to \{regionPath(first.x(), first.y(), first.z())}", e);
+            }
+        }
+        return written;
+    }
+
+    public ChunkSaveQueue saveQueue() {
+        return saveQueue;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Writes the queued chunks, then closes the region files.
+     * Chunks that keep failing to be written are tried once more, then logged and discarded.
+     */
+    @Override
+    public void close() {
+        if (!saveQueue.flush()) {
+            logger.warn("Trying once more to save the {} chunks left in {}", saveQueue.queueDepth(), directory);
+        }
+        saveQueue.close();
+        closeRegions();
+    }
+
+    private synchronized void closeRegions() {
+        closed = true;
+        regions.forEach((_, region) -> {
+            try {
+                region.sync();
+                region.close();
+            } catch (IOException e) {
+                logger.error(STR."Failed to close region file \{region.path()}", e);
+            }
+        });
+        regions.clear();
+    }
+}
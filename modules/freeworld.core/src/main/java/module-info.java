@@ -25,6 +25,8 @@ module freeworld.core {
     exports freeworld.world.entity;
     exports freeworld.world.entity.component;
     exports freeworld.world.entity.system;
+    exports freeworld.world.gen;
+    exports freeworld.world.storage;
 
     requires ch.qos.logback.core;
     requires ch.qos.logback.classic;
@@ -0,0 +1,75 @@
+/*
+ * freeworld - 3D sandbox game
+ * Copyright (C) 2024  XenFork Union
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+
+package freeworld.world.gen;
+
+import freeworld.world.block.BlockTypes;
+import freeworld.world.chunk.Chunk;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author squid233
+ * @since 0.1.0
+ */
+class NoiseChunkGeneratorTest {
+    private static final int DIRT_DEPTH = 3;
+
+    /**
+     * A column whose blocks are all solid, as well as the {@value #DIRT_DEPTH} + 1 blocks above the chunk,
+     * is stone all the way up, in the chunks crossing the surface as in the chunks filled at once.
+     */
+    @Test
+    void buriedColumnIsStone() {
+        final NoiseChunkGenerator generator = new NoiseChunkGenerator(42L);
+        int buriedColumns = 0;
+        for (int cx = -3; cx <= 3; cx++) {
+            for (int cz = -3; cz <= 3; cz++) {
+                for (int cy = -3; cy <= 2; cy++) {
+                    final Chunk chunk = new Chunk(null, cx, cy, cz);
+                    generator.generate(chunk);
+                    if (chunk.uniformBlockType() != null) {
+                        continue;
+                    }
+                    final Chunk above = new Chunk(null, cx, cy + 1, cz);
+                    generator.generate(above);
+                    for (int z = 0; z < Chunk.SIZE; z++) {
+                        for (int x = 0; x < Chunk.SIZE; x++) {
+                            if (!isBuried(chunk, above, x, z)) {
+                                continue;
+                            }
+                            buriedColumns++;
+                            for (int y = 0; y < Chunk.SIZE; y++) {
+                                assertEquals(BlockTypes.STONE, chunk.getBlockType(x, y, z),
+                                    STR."block \{x}, \{y}, \{z} of chunk \{cx}, \{cy}, \{cz}");
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(buriedColumns > 0, "no buried column in the chunks crossing the surface");
+    }
+
+    private static boolean isBuried(Chunk chunk, Chunk above, int x, int z) {
+        for (int y = 0; y <= DIRT_DEPTH; y++) {
+            if (above.getBlockType(x, y, z).air()) {
+                return false;
+            }
+        }
+        for (int y = 0; y < Chunk.SIZE; y++) {
+            if (chunk.getBlockType(x, y, z).air()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}